@@ -0,0 +1,159 @@
+/*******************************************************************************
+ * @file  BloomFilter.java
+ */
+
+import static java.lang.System.out;
+
+/*******************************************************************************
+ * This class provides Bloom filters: compact bit sets that answer whether a key
+ * might be in a set (with a small false-positive rate) or is definitely not in
+ * it.  Joins build a filter over the join keys of the build side and use it to
+ * drop probe-side tuples that cannot match before they are hashed or unpacked.
+ */
+public class BloomFilter
+{
+    /** The bits of the filter.
+     */
+    private final long [] bits;
+
+    /** The number of bits in the filter.
+     */
+    private final long nBits;
+
+    /** The number of hash functions.
+     */
+    private final int nHashes;
+
+    /** The number of keys added to the filter.
+     */
+    private long nKeys = 0;
+
+    /** The number of keys tested against the filter.
+     */
+    private long tested = 0;
+
+    /** The number of keys the filter eliminated (definitely not in the set).
+     */
+    private long eliminated = 0;
+
+    /***************************************************************************
+     * Construct an empty Bloom filter sized for the expected number of keys and
+     * the desired false-positive rate.
+     * @param expected  the expected number of keys
+     * @param fpp       the desired false-positive probability (e.g., 0.01)
+     */
+    public BloomFilter (long expected, double fpp)
+    {
+        long n = Math.max (1, expected);
+        long m = (long) Math.ceil (-n * Math.log (fpp) / (Math.log (2) * Math.log (2)));
+        nBits   = Math.max (64, (m + 63) / 64 * 64);
+        bits    = new long [(int) (nBits / 64)];
+        nHashes = Math.max (1, (int) Math.round ((double) nBits / n * Math.log (2)));
+    } // constructor
+
+    /***************************************************************************
+     * Add a key to the filter.
+     * @param key  the key to add
+     */
+    public void add (Object key)
+    {
+        long x  = mix (key.hashCode ());
+        long h1 = x & 0xffffffffL;
+        long h2 = (x >>> 32) | 1;
+        for (int i = 0; i < nHashes; i++) {
+            long b = Math.floorMod (h1 + i * h2, nBits);
+            bits [(int) (b >>> 6)] |= 1L << b;
+        } // for
+        nKeys++;
+    } // add
+
+    /***************************************************************************
+     * Determine whether the key might be in the set.  A false answer is exact,
+     * a true answer is wrong with probability falsePositiveRate ().
+     * @param key  the key to test
+     * @return  false if the key is definitely not in the set, true otherwise
+     */
+    public boolean mightContain (Object key)
+    {
+        tested++;
+        long x  = mix (key.hashCode ());
+        long h1 = x & 0xffffffffL;
+        long h2 = (x >>> 32) | 1;
+        for (int i = 0; i < nHashes; i++) {
+            long b = Math.floorMod (h1 + i * h2, nBits);
+            if ((bits [(int) (b >>> 6)] & (1L << b)) == 0) {
+                eliminated++;
+                return false;
+            } // if
+        } // for
+        return true;
+    } // mightContain
+
+    /***************************************************************************
+     * Return the expected false-positive rate for the keys added so far,
+     * i.e., (1 - e^(-k n / m))^k.
+     * @return  the false-positive rate
+     */
+    public double falsePositiveRate ()
+    {
+        return Math.pow (1.0 - Math.exp (-(double) nHashes * nKeys / nBits), nHashes);
+    } // falsePositiveRate
+
+    /***************************************************************************
+     * Return the number of keys tested against the filter.
+     * @return  the number of tested keys
+     */
+    public long getTested ()
+    {
+        return tested;
+    } // getTested
+
+    /***************************************************************************
+     * Return the number of keys the filter eliminated.
+     * @return  the number of eliminated keys
+     */
+    public long getEliminated ()
+    {
+        return eliminated;
+    } // getEliminated
+
+    /***************************************************************************
+     * Convert the filter's statistics to a string.
+     * @return  the string representation of the filter
+     */
+    public String toString ()
+    {
+        return "BloomFilter (bits = " + nBits + ", hashes = " + nHashes + ", keys = " + nKeys
+             + ", fpp = " + String.format ("%.4f", falsePositiveRate ())
+             + ", tested = " + tested + ", eliminated = " + eliminated + " )";
+    } // toString
+
+    /***************************************************************************
+     * Spread a 32-bit hash code over 64 bits (SplitMix64 finalizer).
+     * @param h  the hash code
+     * @return  the mixed hash
+     */
+    private static long mix (int h)
+    {
+        long z = h * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    } // mix
+
+    /***************************************************************************
+     * The main method is used for testing purposes only.
+     * @param args  the command-line arguments
+     */
+    public static void main (String [] args)
+    {
+        BloomFilter bf = new BloomFilter (1000, 0.01);
+        for (int i = 0; i < 1000; i++) bf.add (i);
+        int falsePos = 0;
+        for (int i = 1000; i < 11000; i++) if (bf.mightContain (i)) falsePos++;
+        out.println (bf);
+        out.println ("observed false-positive rate = " + falsePos / 10000.0);
+    } // main
+
+} // BloomFilter class
+
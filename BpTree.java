@@ -34,6 +34,9 @@ public class BpTree <K extends Comparable <K>, V>
 
     /***************************************************************************
      * This inner class defines nodes that are stored in the B+tree map.
+     * An internal node's key [i] is the largest key in the subtree ref [i];
+     * ref [nKeys] holds the keys greater than key [nKeys - 1].  Leaves hold
+     * the values in ref [i] and are chained together through nextLeaf.
      */
     private class Node
     {
@@ -41,52 +44,166 @@ public class BpTree <K extends Comparable <K>, V>
         int       nKeys; // max = ORDER - 1
         K []      key;
         Object [] ref;
-        Node parent;
-        Node nextLeaf;
+        Node      nextLeaf;
         
+        @SuppressWarnings("unchecked")
         Node (boolean _isLeaf)
         {
             isLeaf = _isLeaf;
             nKeys  = 0;
             key    = (K []) Array.newInstance (classK, ORDER - 1);
-            
-            if (isLeaf) {
-                //ref = (V []) Array.newInstance (classV, ORDER);
-                ref = new Object [ORDER];
-            } else {
-                ref = (Node []) Array.newInstance (Node.class, ORDER);
-            } // if
+            ref    = new Object [ORDER];
         } // constructor
-        
-        
+    } // Node inner class
+
+    /***************************************************************************
+     * This inner class is the read-only view of a key range returned by subMap,
+     * headMap and tailMap.  It reads through to the tree, so it reflects later
+     * puts; size and lastKey walk the range.
+     */
+    private class Range
+            extends AbstractMap <K, V>
+            implements SortedMap <K, V>
+    {
+        final K       lo, hi;                                  // null for no bound
+        final boolean loInc, hiInc;
+
+        Range (K _lo, boolean _loInc, K _hi, boolean _hiInc)
+        {
+            lo    = _lo;
+            loInc = _loInc;
+            hi    = _hi;
+            hiInc = _hiInc;
+        } // constructor
+
+        boolean aboveLo (K k)
+        {
+            if (lo == null) return true;
+            int c = k.compareTo (lo);
+            return c > 0 || c == 0 && loInc;
+        } // aboveLo
+
+        boolean belowHi (K k)
+        {
+            if (hi == null) return true;
+            int c = k.compareTo (hi);
+            return c < 0 || c == 0 && hiInc;
+        } // belowHi
+
+        public Comparator <? super K> comparator () { return null; }
+
+        public Set <Map.Entry <K, V>> entrySet ()
+        {
+            return new AbstractSet <Map.Entry <K, V>> () {
+                public Iterator <Map.Entry <K, V>> iterator () { return new RangeIterator (Range.this); }
+                public int size ()
+                {
+                    int s = 0;
+                    for (Iterator <Map.Entry <K, V>> it = iterator (); it.hasNext (); it.next ()) s++;
+                    return s;
+                } // size
+            };
+        } // entrySet
+
         @SuppressWarnings("unchecked")
-        Node (boolean _isLeaf, Node par)
+        public V get (Object key)
         {
-            isLeaf = _isLeaf;
-            nKeys  = 0;
-            key    = (K []) Array.newInstance (classK, ORDER - 1);
-            parent = par;
-            if (isLeaf) {
-                //ref = (V []) Array.newInstance (classV, ORDER);
-                ref = new Object [ORDER];
-                for (int j=0; j<nKeys; j++){
-                	for (int i=0; i<parent.key.length; i++){
-                		if (parent.key[i].compareTo(key[j]) == 0){
-                			 nextLeaf = (Node) parent.ref[i];
-                			 break;
-                		}
-                	}
-                }
-            } else {
-                ref = (Node []) Array.newInstance (Node.class, ORDER);
+            return (aboveLo ((K) key) && belowHi ((K) key)) ? BpTree.this.get (key) : null;
+        } // get
+
+        public boolean containsKey (Object key) { return get (key) != null; }
+
+        public K firstKey ()
+        {
+            Iterator <Map.Entry <K, V>> it = new RangeIterator (this);
+            if (! it.hasNext ()) throw new NoSuchElementException ("BpTree.Range.firstKey: empty range");
+            return it.next ().getKey ();
+        } // firstKey
+
+        public K lastKey ()
+        {
+            K last = null;
+            for (Iterator <Map.Entry <K, V>> it = new RangeIterator (this); it.hasNext (); ) last = it.next ().getKey ();
+            if (last == null) throw new NoSuchElementException ("BpTree.Range.lastKey: empty range");
+            return last;
+        } // lastKey
+
+        public SortedMap <K,V> headMap (K toKey)            { return narrow (null, true, toKey, false); }
+        public SortedMap <K,V> tailMap (K fromKey)          { return narrow (fromKey, true, null, true); }
+        public SortedMap <K,V> subMap (K fromKey, K toKey)  { return narrow (fromKey, true, toKey, false); }
+
+        /***********************************************************************
+         * Return the view of the intersection of this range with new bounds
+         * (null for none).
+         */
+        Range narrow (K from, boolean fromInc, K to, boolean toInc)
+        {
+            K       l = lo, h = hi;
+            boolean li = loInc, hInc = hiInc;
+            if (from != null) {
+                int c = (l == null) ? 1 : from.compareTo (l);
+                if (c > 0) { l = from; li = fromInc; }
+                else if (c == 0) li = li && fromInc;
             } // if
+            if (to != null) {
+                int c = (h == null) ? -1 : to.compareTo (h);
+                if (c < 0) { h = to; hInc = toInc; }
+                else if (c == 0) hInc = hInc && toInc;
+            } // if
+            return new Range (l, li, h, hInc);
+        } // narrow
+    } // Range inner class
+
+    /***************************************************************************
+     * This inner class iterates over the entries of a Range by following the
+     * leaf chain from the leaf holding its lower bound.
+     */
+    private class RangeIterator
+            implements Iterator <Map.Entry <K, V>>
+    {
+        final Range range;
+        Node n;                                                // the current leaf
+        int  i = -1;                                           // the position of the next entry in n
+
+        RangeIterator (Range _range)
+        {
+            range = _range;
+            n = (range.lo == null) ? leftmostLeaf () : findLeaf (range.lo);
+            advance ();
+            while (n != null && ! range.aboveLo (n.key [i])) advance ();
+            if (n != null && ! range.belowHi (n.key [i])) n = null;
         } // constructor
-    } // Node inner class
+
+        void advance ()
+        {
+            for (i++; n != null && i == n.nKeys; i = 0) n = n.nextLeaf;
+        } // advance
+
+        public boolean hasNext () { return n != null; }
+
+        @SuppressWarnings("unchecked")
+        public Map.Entry <K, V> next ()
+        {
+            if (n == null) throw new NoSuchElementException ("BpTree.RangeIterator.next: no more entries");
+            Map.Entry <K, V> e = new AbstractMap.SimpleImmutableEntry <> (n.key [i], (V) n.ref [i]);
+            advance ();
+            if (n != null && ! range.belowHi (n.key [i])) n = null;
+            return e;
+        } // next
+    } // RangeIterator inner class
 
     /** The root of the B+Tree
      */
     private Node root;
 
+    /** The number of keys in the B+Tree.
+     */
+    private int size = 0;
+
+    /** The separator key passed up by the most recent split.
+     */
+    private K splitKey;
+
     /** The counter for the number nodes accessed (for performance testing).
      */
     private int count = 0;
@@ -113,29 +230,20 @@ public class BpTree <K extends Comparable <K>, V>
     } // comparator
 
     /***************************************************************************
-     * Return a set containing all the entries as pairs of keys and values.
+     * Return a set containing all the entries as pairs of keys and values, in
+     * ascending key order.
      * @return  the set view of the map
      * @author Chris Klappich
      */
+    @SuppressWarnings("unchecked")
     public Set <Map.Entry <K, V>> entrySet ()
     {
-        Set <Map.Entry <K, V>> enSet = new HashSet <> ();
-        Node temp = root;
-        while(true){
-    		if(temp.isLeaf){
-    			break;
-    		}
-    		else{
-    			temp = (Node) temp.ref[0];
-    		}
-    	}
-        while(temp != null){
-        	for(int x=0; x< temp.nKeys;++x){
-        		Map.Entry temp1 = (Map.Entry)temp.ref[x];
-        		enSet.add(temp1);
-        	}
-        	temp = temp.nextLeaf;
-        }
+        Set <Map.Entry <K, V>> enSet = new LinkedHashSet <> ();
+        for (Node n = leftmostLeaf (); n != null; n = n.nextLeaf) {
+            for (int i = 0; i < n.nKeys; i++) {
+                enSet.add (new AbstractMap.SimpleEntry <> (n.key [i], (V) n.ref [i]));
+            } // for
+        } // for
         return enSet;
     } // entrySet
 
@@ -151,14 +259,23 @@ public class BpTree <K extends Comparable <K>, V>
     } // get
 
     /***************************************************************************
-     * Put the key-value pair in the B+Tree map.
+     * Put the key-value pair in the B+Tree map, replacing the value if the key
+     * is already present.
      * @param key    the key to insert
      * @param value  the value to insert
      * @return  null (not the previous value)
      */
     public V put (K key, V value)
     {
-        insert (key, value, root, null);
+        Node sib = insert (key, value, root);
+        if (sib != null) {                                  // the root split: add a level
+            Node newRoot = new Node (false);
+            newRoot.key [0] = splitKey;
+            newRoot.ref [0] = root;
+            newRoot.ref [1] = sib;
+            newRoot.nKeys   = 1;
+            root = newRoot;
+        } // if
         return null;
     } // put
 
@@ -169,16 +286,8 @@ public class BpTree <K extends Comparable <K>, V>
      */
     public K firstKey () 
     {
-    	Node temp = root;
-    	while(true){
-    		if(temp.isLeaf){
-    			break;
-    		}
-    		else{
-    			temp = (Node) temp.ref[0];
-    		}
-    	}
-        return temp.key[0];
+        if (size == 0) throw new NoSuchElementException ("BpTree.firstKey: empty map");
+        return leftmostLeaf ().key [0];
     } // firstKey
 
     /***************************************************************************
@@ -186,137 +295,61 @@ public class BpTree <K extends Comparable <K>, V>
      * @return  the last key in the B+Tree map.
      * @author Chris Klappich
      */
+    @SuppressWarnings("unchecked")
     public K lastKey () 
     {
-    	Node temp = root;
-    	while(true){
-    		if(temp.isLeaf){
-    			break;
-    		}
-    		else{
-    			temp = (Node) temp.ref[temp.nKeys-1];
-    		}
-    	}
-
-        return temp.key[temp.nKeys-1];
+        if (size == 0) throw new NoSuchElementException ("BpTree.lastKey: empty map");
+        Node n = root;
+        while (! n.isLeaf) n = (Node) n.ref [n.nKeys];
+        return n.key [n.nKeys - 1];
     } // lastKey
 
     /***************************************************************************
-     * Return the portion of the B+Tree map where key < toKey.
+     * Return a view of the portion of the B+Tree map where key < toKey.
      * @return  the submap with keys in the range [firstKey, toKey)
      * @author Chris Klappich
      */
     public SortedMap <K,V> headMap (K toKey)
     {
-    	BpTree head_map = new BpTree(classK,classV);
-    	Node temp = root;
-    	while(true){
-    		if(temp.isLeaf){
-    			break;
-    		}
-    		else{
-    			temp = (Node) temp.ref[0];
-    		}
-    	}
-    	boolean atKey = false;
-    	while(true){
-    		for(int x=0;x<temp.nKeys;++x){
-    			head_map.put(temp.key[x], temp.ref[x]);
-    			if(temp.key[x].compareTo(toKey)==0){
-    				atKey = true;
-    				break;
-    			}
-    		}
-    		if(atKey){
-    			break;
-    		}
-    		else{
-    			temp = temp.nextLeaf;
-    		}
-    	}
-
-        return head_map;
+        return subMap (null, true, toKey, false);
     } // headMap
 
     /***************************************************************************
-     * Return the portion of the B+Tree map where fromKey <= key.
+     * Return a view of the portion of the B+Tree map where fromKey <= key.
      * @return  the submap with keys in the range [fromKey, lastKey]
      * @author Chris Klappich
      */
     public SortedMap <K,V> tailMap (K fromKey)
     {
-    	BpTree tail_map = new BpTree(classK,classV);
-    	Node temp = root;
-    	while(true){
-    		if(temp.isLeaf){
-    			break;
-    		}
-    		else{
-    			temp = (Node) temp.ref[0];
-    		}
-    	}
-    	boolean atKey = false;
-    	while(true){
-    		for(int x=0;x<temp.nKeys;++x){
-    			if(temp.key[x].compareTo(fromKey)==0){
-    				atKey = true;
-    			}
-    			if(atKey){
-    				tail_map.put(temp.key[x], temp.ref[x]);
-    			}
-    			
-    		}
-    		if(temp.nextLeaf != null){
-    			temp = temp.nextLeaf;
-    		}
-    		else{
-    			break;
-    		}
-    	}
-
-        return tail_map;
+        return subMap (fromKey, true, null, true);
     } // tailMap
 
     /***************************************************************************
-     * Return the portion of the B+Tree map whose keys are between fromKey and toKey,
+     * Return a view of the portion of the B+Tree map whose keys are between fromKey and toKey,
      * i.e., fromKey <= key < toKey.
      * @return  the submap with keys in the range [fromKey, toKey)
      * @author Chris Klappich
      */
     public SortedMap <K,V> subMap (K fromKey, K toKey)
     {
-    	BpTree sub_map = new BpTree(classK,classV);
-    	Node temp = root;
-    	while(true){
-    		if(temp.isLeaf){
-    			break;
-    		}
-    		else{
-    			temp = (Node) temp.ref[0];
-    		}
-    	}
-    	boolean firstKey = false;
-    	boolean lastKey = false;
-    	while(temp != null){
-    		for(int x=0;x<temp.nKeys;++x){
-    			if(temp.key[x].compareTo(fromKey)==0){
-    				firstKey =true;
-    			}
-    			if(temp.key[x].compareTo(toKey)==0){
-    				lastKey=true;
-    				break;
-    			}
-    			if(firstKey ==true && lastKey == false){
-    				sub_map.put(temp.key[x], temp.ref[x]);
-    			}
-    		}
-    		if(lastKey){
-    			break;
-    		}
-    		temp = temp.nextLeaf;
-    	}
-
-        return sub_map;
+        return subMap (fromKey, true, toKey, false);
+    } // subMap
+
+    /***************************************************************************
+     * Return a view of the portion of the B+Tree map whose keys are between fromKey and toKey,
+     * where each bound may be inclusive or exclusive, or null for no bound.  The
+     * submap is a read-only view that holds only the bounds (nothing is copied):
+     * each traversal descends once to the leaf holding fromKey and then follows
+     * the leaf chain until it passes toKey.
+     * @param fromKey        the lower bound (null for none)
+     * @param fromInclusive  whether the lower bound is included
+     * @param toKey          the upper bound (null for none)
+     * @param toInclusive    whether the upper bound is included
+     * @return  the submap view with keys in the range
+     */
+    public SortedMap <K,V> subMap (K fromKey, boolean fromInclusive, K toKey, boolean toInclusive)
+    {
+        return new Range (fromKey, fromInclusive, toKey, toInclusive);
     } // subMap
 
     /***************************************************************************
@@ -326,21 +359,7 @@ public class BpTree <K extends Comparable <K>, V>
      */
     public int size ()
     {
-        int sum = 0;
-        Node temp = root;
-    	while(true){
-    		if(temp.isLeaf){
-    			break;
-    		}
-    		else{
-    			temp = (Node) temp.ref[0];
-    		}
-    	}
-    	while(temp != null){
-    		sum += temp.nKeys;
-    		temp = temp.nextLeaf;
-    	}
-        return  sum;
+        return size;
     } // size
 
     /***************************************************************************
@@ -351,8 +370,10 @@ public class BpTree <K extends Comparable <K>, V>
     @SuppressWarnings("unchecked")
     private void print (Node n, int level)
     {
-        out.println ("BpTree");
-        out.println ("-------------------------------------------");
+        if (level == 0) {
+            out.println ("BpTree");
+            out.println ("-------------------------------------------");
+        } // if
 
         for (int j = 0; j < level; j++) out.print ("\t");
         out.print ("[ . ");
@@ -362,9 +383,47 @@ public class BpTree <K extends Comparable <K>, V>
             for (int i = 0; i <= n.nKeys; i++) print ((Node) n.ref [i], level + 1);
         } // if
 
-        out.println ("-------------------------------------------");
+        if (level == 0) out.println ("-------------------------------------------");
     } // print
 
+    /***************************************************************************
+     * Return the leftmost leaf, i.e., the start of the leaf chain.
+     * @return  the leftmost leaf
+     */
+    @SuppressWarnings("unchecked")
+    private Node leftmostLeaf ()
+    {
+        Node n = root;
+        while (! n.isLeaf) n = (Node) n.ref [0];
+        return n;
+    } // leftmostLeaf
+
+    /***************************************************************************
+     * Return the leaf where the key is or would be stored.
+     * @param key  the key to locate
+     * @return  the leaf for the key
+     */
+    @SuppressWarnings("unchecked")
+    private Node findLeaf (K key)
+    {
+        Node n = root;
+        while (! n.isLeaf) n = (Node) n.ref [childPos (key, n)];
+        return n;
+    } // findLeaf
+
+    /***************************************************************************
+     * Return the position of the child of internal node n whose subtree covers key.
+     * @param key  the key to locate
+     * @param n    the internal node
+     * @return  the child position
+     */
+    private int childPos (K key, Node n)
+    {
+        int i = 0;
+        while (i < n.nKeys && key.compareTo (n.key [i]) > 0) i++;
+        return i;
+    } // childPos
+
     /***************************************************************************
      * Recursive helper function for finding a key in B+trees.
      * @param key  the key to find
@@ -388,285 +447,115 @@ public class BpTree <K extends Comparable <K>, V>
     } // find
 
     /***************************************************************************
-     * Recursive helper function for inserting a key in B+trees.
+     * Recursive helper function for inserting a key in B+trees.  If node n has
+     * to split, the new right sibling is returned and the separator key to add
+     * to the parent is left in splitKey.
      * @param key  the key to insert
-     * @param ref  the value/node to insert
+     * @param ref  the value to insert
      * @param n    the current node
-     * @param p    the parent node
+     * @return  the new sibling of n if n split, otherwise null
      */
-    private void insert (K key, V ref, Node n, Node p)
+    @SuppressWarnings("unchecked")
+    private Node insert (K key, V ref, Node n)
     {
-    	if(n.isLeaf){//This node is a leaf node
-    		if (n.nKeys < ORDER - 1) {//Node is not full
-    	        wedge (key, ref, n);
-    	        return;
-    	    } 
-    	    else {//Node is full
-    	        split (key, ref, n);
-    	        return;
-    	    } // else  
-    	}   
-    	else{//This node is an internal node
-    	        for (int i = 0; i < n.nKeys; i++) {
-    	            K k_i = n.key [i];
-    	            if (key.compareTo (k_i) <= 0) {
-    	                insert (key, ref, (Node) n.ref[i], n);
-    	                return;
-    	            }
-    	        } // for
-    	        insert (key, ref, (Node) n.ref[n.nKeys], n);
-    	        return;
-    	}
-    	
-//        if (n.nKeys < ORDER - 1) {
-//            for (int i = 0; i < n.nKeys; i++) {
-//                K k_i = n.key [i];
-//                if (key.compareTo (k_i) < 0) {
-//                    wedge (key, ref, n, i);
-//                } else if (key.equals (k_i)) {
-//                    out.println ("BpTree:insert: attempt to insert duplicate key = " + key);
-//                } // if
-//            } // for
-//            wedge (key, ref, n, n.nKeys);
-//        } else {
-//            Node sib = split (key, ref, n);
-//
-//             //-----------------\\
-//            // TO BE IMPLEMENTED \\
-//           //---------------------\\
-//
-//        } // if
+        int i = childPos (key, n);
+        if (n.isLeaf) {
+            if (i < n.nKeys && key.compareTo (n.key [i]) == 0) {   // existing key: replace value
+                n.ref [i] = ref;
+                return null;
+            } // if
+            size++;
+            if (n.nKeys < ORDER - 1) {
+                wedge (key, ref, n, i);
+                return null;
+            } // if
+            return split (key, ref, n, i);
+        } // if
+
+        Node child = insert (key, ref, (Node) n.ref [i]);
+        if (child == null) return null;                             // the child did not split
+        if (n.nKeys < ORDER - 1) {
+            wedge (splitKey, child, n, i);
+            return null;
+        } // if
+        return split (splitKey, child, n, i);
     } // insert
 
     /***************************************************************************
-     * Wedge the key-ref pair into node n.
+     * Wedge the key-ref pair into node n at position i, shifting larger keys
+     * right.  In an internal node the ref is the new right child of the key.
      * @param key  the key to insert
      * @param ref  the value/node to insert
      * @param n    the current node
      * @param i    the insertion position within node n
      */
-    private void wedge (K key, V ref, Node n)
+    private void wedge (K key, Object ref, Node n, int i)
     {
-    	  	
-        n.nKeys++;
-        for (int i = 0; i<n.nKeys; i++) {
-            if(n.key[i] == null){
-            	n.key [i] = key;
-                n.ref [i] = ref;
-                break;
-            }
+        int shift = n.isLeaf ? 0 : 1;                               // internal refs sit right of keys
+        for (int j = n.nKeys; j > i; j--) {
+            n.key [j] = n.key [j - 1];
+            n.ref [j + shift] = n.ref [j - 1 + shift];
         } // for
-
-        
-        K[] tempk = Arrays.copyOf(n.key, n.nKeys);
-    	V[] tempv = (V[]) Arrays.copyOf(n.ref, n.nKeys);
-    	
-    	Arrays.sort(tempk);
-    	Arrays.sort(tempv);
-    	
-    	n.key = Arrays.copyOf(tempk, ORDER-1);
-    	n.ref = Arrays.copyOf(tempv, ORDER);  
-    	
-//        Arrays.sort(n.key);
-//        Arrays.sort(n.ref);
-        
+        n.key [i] = key;
+        n.ref [i + shift] = ref;
+        n.nKeys++;
     } // wedge
 
     /***************************************************************************
-     * Split node n and return the newly created node.
+     * Split the full node n while inserting the key-ref pair at position i, and
+     * return the newly created right sibling.  A leaf keeps its lower half and
+     * passes up its largest remaining key, an internal node passes up its middle
+     * key (see splitKey).
      * @param key  the key to insert
      * @param ref  the value/node to insert
      * @param n    the current node
+     * @param i    the insertion position within node n
+     * @return  the new right sibling
      * @author Chris Klappich
      * @author Wes Ishee
      */
-private Node split (K key, V ref, Node n)
+    @SuppressWarnings("unchecked")
+    private Node split (K key, Object ref, Node n, int i)
     {
-        //out.println ("split not implemented yet");
-        
-        if(n == root){
-            K[] _key = (K []) Array.newInstance (classK, ORDER);
-            V [] _ref = (V []) Array.newInstance (classV, n.nKeys+1);
-            for(int x=0;x<n.key.length;++x){
-               	_key[x] = n.key[x];
-            }
-            for(int z=0;z<n.ref.length;++z){
-            	_ref[z] = (V) n.ref[z];
-            }
-           	_key[ORDER-1] = key;
-           	_ref[n.nKeys] = ref;
-           	Arrays.sort(_key);
-           	Arrays.sort(_ref);
-           	Node new_root = new Node(false,null);
-           	Node new_lc = new Node(true, new_root);
-           	new_root.key[0] = _key[(int) Math.floor(ORDER/2)];
-           	Node new_rc = new Node(true,null);
-           	int y=0;
-           	for(int x=0;x<ORDER;++x){
-           		if(x<2){
-           			new_lc.key[x] = _key[x];
-            		new_lc.ref[x] = (V) _ref[x];
-            	}
-           		else{
-           			new_rc.key[y] = _key[x];
-           			new_rc.ref[y] = _ref[x];
-           			++y;
-           			if(x==4){
-           				new_rc.ref[y] = _ref[x+1];
-           			}
-           		}
-           	}
-           	new_root.ref[0] = new_lc;
-           	new_root.ref[1] = new_rc;
-           	root=new_root;
-        }
-        if(n.isLeaf){
-        	// copies n.key into tempKeys and adds the key to be inserted
-        	K[] tempKeys = Arrays.copyOf(n.key, ORDER);
-        	V[] tempVals = (V[]) Arrays.copyOf(n.ref, ORDER+1);
-    		tempKeys[ORDER] = key;
-    		Arrays.sort(tempKeys);// sorts tempKeys
-    		tempVals[ORDER] = ref;
-    		Arrays.sort(tempVals);
-    		K keySplit = tempKeys[tempKeys.length/2]; // finds middle of key array to split on
-    		V refSplit = tempVals[tempVals.length/2]; // finds middle of reference array to split on
-    		
-    		// clears n.key of all keys after the splitting point
-    		for (int i=n.key.length/2; i<n.key.length; i++) 
-    			n.key[i] = null;
-    		tempKeys = Arrays.copyOfRange(tempKeys, ORDER/2, ORDER); // removes lower, stationary keys from tempKeys
-    		
-    		// clears n.ref of all keys after the splitting point
-    		for (int i=n.ref.length/2; i<n.ref.length; i++) 
-    			n.ref[i] = null;
-    		tempVals = Arrays.copyOfRange(tempVals, ORDER/2, ORDER); // removes lower, stationary refs from tempVals
-    		
-    		// clears n.key of all references after the splitting point
-    		for (int i=n.ref.length/2; i<n.ref.length; i++) 
-    			n.ref[i] = null;
-    		
-    		// create and populate sibling node
-    		Node sibling = new Node(true, n.parent);
-    		sibling.key = tempKeys;
-    		sibling.ref = tempVals;
-    		sibling.nKeys = sibling.key.length;
-    		
-    		if(n.parent.key.length == ORDER-1){ // parent is full
-    			split(keySplit, (V) sibling, n.parent); // I HAVE NO IDEA IF THIS WORKS OR NOT!!!!!!!!!!!!!!!!!!!!!
-    		}else{ // parent is NOT full
-    			for(int i=0; i<n.parent.nKeys-1; i++){ // iterate through parent and find where keySplit and refSplit should go
-    				if(tempKeys[0].compareTo(n.parent.key[i]) < 0){
-    					wedge(keySplit, (V) sibling, n.parent);
-    				}
-    			}
-    		}
-    		
-    		// set n.nextLeaf to be sibling
-            for (int i = 0; i<n.parent.nKeys; i++){
-            	if(n.key[n.nKeys-1].compareTo(n.parent.key[i]) < 0){
-            		n.nextLeaf = (Node) n.parent.ref[i];
-            	}else if(n.key[n.nKeys-1].compareTo(n.parent.key[i]) > 0 && i >= n.nKeys){
-            		n.nextLeaf = (Node) n.parent.ref[i+1];
-            	}
-            }
-//            for (int i=0; i<ORDER/2; i++) // populates sibling keys with remaining keys from tempKeys
-//            	sibling.key[i] = tempKeys[i];
-            Node aux = n.nextLeaf;
-            n.nextLeaf = sibling;
-            sibling.nextLeaf = aux;
-            Node lastLeaf = (Node) n.parent.ref[n.parent.nKeys-1];
-            if(n == lastLeaf){
-                lastLeaf = sibling;
-            }
-            
-//            sibling.key[0] = keySplit;
-//            K[] _key = (K []) Array.newInstance (classK, ORDER);
-//            V[] _ref = (V []) Array.newInstance (classV, ORDER);
-            
-        
-        }        
-        else{//Splitting an internal node
-            Node sibling = new Node(false,n.parent);
-            
-            K[] _key = (K []) Array.newInstance (classK, ORDER);
-            Node[] _ref = (Node[]) Array.newInstance (Node.class, ORDER+1);
-            
-             //-----------------\\
-            // TO BE IMPLEMENTED \\
-           //---------------------\\
-            int y=0;
-            for(int x=0;x<n.key.length+1;++x){
-               	/**
-               	 * Adds all Keys and their respective refs to array
-               	 * Maintains order as to determine which value will be promoted to 
-               	 * the new root node
-               	 */
-               	if(n.key[y-1].compareTo(key)<0 && n.key[y].compareTo(key)>0){
-               		_key[x] = key;
-               		_ref[x] = (Node) ref;
-               	}
-               	else{
-               		_key[x] = n.key[y];
-                	_ref[x] = (Node) n.ref[y];
-                	if(y==4){
-               			_ref[x+1] = (Node) n.ref[y+1];
-               			++x;
-               		}
-               		++y;
-               		
-               	}
-               	
-            }
-            //out.println("nKeys: " + n.nKeys + "\tcount: " + count);
-            //_ref[count] = (Node) n.ref[n.nKeys];//Copy the 'else' pointer
-            //Restore the Node to empty, ready to be re-filled
-            for(int i = 0; i < ORDER-1; i++){
-                n.key[i] = null;
-                n.ref[i] = null;
-            }
-            //size -= n.nKeys;
-            n.nKeys = 0;
-            for (int i = ORDER-1; i >= 0; i--){//Copy keys and references to the proper objects
-                if(i > ORDER/2){
-                    if(i == ORDER-1){
-                        //out.println("Sibling - Rightmost Ref");
-                        sibling.ref[0] = _ref[ORDER];
-                        _ref[ORDER].parent = sibling;
-                    }
-                    //out.println("Sibling - Key/Ref Pair");
-                    wedge(_key[i],(V) _ref[i],sibling);
-                    _ref[i].parent = sibling;
-                }
-                else{
-                    if(i == ORDER/2){
-                        //out.println("N Node - Rightmost Ref");
-                        n.ref[0] = _ref[i];
-                    }
-                    else{
-                        //out.println("N Node - Key/Ref Pair");
-                        wedge(_key[i], (V) _ref[i],n);
-                    }
-                }
-                
-            }
-            int loc=0;
-            for(int i = 0; i < ORDER; i++){//Move the pointer to the sibling
-                if(n.parent.ref[i] == n){
-                    n.parent.ref[i] = sibling;
-                    loc = i;
-                }
-            }
-            if(n.parent.nKeys == ORDER-1){//If parent is full
-                //out.println("Throwing " + _key[ORDER/2]);
-                return split(_key[ORDER/2], (V) n,n.parent);//Split the parent
-            }
-            else{//Parent not full
-                //out.println("Throwing " + _key[ORDER/2]);
-            	wedge(_key[ORDER/2], (V) n,n.parent);//Insert to the parent 
-                return n.parent;
-            }
-        }
-        return null;
+        int shift = n.isLeaf ? 0 : 1;
+        K []      keys = (K []) Array.newInstance (classK, ORDER);  // the node's pairs plus the new one
+        Object [] refs = new Object [ORDER + 1];
+        for (int j = 0, k = 0; j < ORDER; j++) {
+            if (j == i) {
+                keys [j] = key;
+                refs [j + shift] = ref;
+            } else {
+                keys [j] = n.key [k];
+                refs [j + shift] = n.ref [k + shift];
+                k++;
+            } // if
+        } // for
+        if (! n.isLeaf) refs [0] = n.ref [0];
+
+        Node sib = new Node (n.isLeaf);
+        Arrays.fill (n.key, null);
+        Arrays.fill (n.ref, null);
+        int mid = (ORDER + 1) / 2;                                  // number of keys kept in n
+
+        if (n.isLeaf) {
+            for (int j = 0; j < mid; j++) { n.key [j] = keys [j]; n.ref [j] = refs [j]; }
+            for (int j = mid; j < ORDER; j++) { sib.key [j - mid] = keys [j]; sib.ref [j - mid] = refs [j]; }
+            n.nKeys   = mid;
+            sib.nKeys = ORDER - mid;
+            splitKey  = keys [mid - 1];
+            sib.nextLeaf = n.nextLeaf;
+            n.nextLeaf   = sib;
+        } else {
+            mid = ORDER / 2;                                        // keys [mid] moves up
+            for (int j = 0; j < mid; j++) n.key [j] = keys [j];
+            for (int j = 0; j <= mid; j++) n.ref [j] = refs [j];
+            for (int j = mid + 1; j < ORDER; j++) sib.key [j - mid - 1] = keys [j];
+            for (int j = mid + 1; j <= ORDER; j++) sib.ref [j - mid - 1] = refs [j];
+            n.nKeys   = mid;
+            sib.nKeys = ORDER - mid - 1;
+            splitKey  = keys [mid];
+        } // if
+        return sib;
     } // split
 
     /***************************************************************************
@@ -676,24 +565,18 @@ private Node split (K key, V ref, Node n)
     public static void main (String [] args)
     {
         BpTree <Integer, Integer> bpt = new BpTree <> (Integer.class, Integer.class);
-//        int totKeys = 10;
-//        if (args.length == 1) totKeys = Integer.valueOf (args [0]);
-//        for (int i = 1; i < totKeys; i += 2) bpt.put (i, i * i);
-        bpt.put(5, 5);
-        System.out.println("ins 5");
-        bpt.put(3, 3);
-        System.out.println("ins 3");
-        bpt.put(7, 7);
-        System.out.println("ins 7");
-        bpt.put(1, 1);
-        System.out.println("ins 1");
-        bpt.put(9,9);
+        int totKeys = 10;
+        if (args.length == 1) totKeys = Integer.valueOf (args [0]);
+        for (int i = 1; i < totKeys; i += 2) bpt.put (i, i * i);
         bpt.print (bpt.root, 0);
-        for (int i = 0; i < 9; i++) {
+        for (int i = 0; i < totKeys; i++) {
             out.println ("key = " + i + " value = " + bpt.get (i));
         } // for
         out.println ("-------------------------------------------");
-//        out.println ("Average number of nodes accessed = " + bpt.count / (double) totKeys);
+        out.println ("Average number of nodes accessed = " + bpt.count / (double) totKeys);
+        out.println ("subMap [3, 7) = " + bpt.subMap (3, 7));
+        out.println ("headMap < 5  = " + bpt.headMap (5));
+        out.println ("tailMap >= 5 = " + bpt.tailMap (5));
     } // main
 
 } // BpTree class
\ No newline at end of file
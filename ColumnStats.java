@@ -0,0 +1,228 @@
+/*******************************************************************************
+ * @file  ColumnStats.java
+ */
+
+import java.util.*;
+
+/*******************************************************************************
+ * This class holds the statistics of one column of a table (see Table.analyze):
+ * the row count, null count, distinct count (estimated by a HyperLogLog sketch),
+ * minimum, maximum and an equi-depth histogram of the values.  The statistics
+ * are kept up to date by Table.insert and are used to estimate the selectivity
+ * of comparisons when choosing between index probes and scans.
+ */
+public class ColumnStats
+{
+    /** The maximum number of histogram buckets.
+     */
+    private static final int BUCKETS = 32;
+
+    /** The number of index bits of the distinct count sketch.
+     */
+    private static final int HLL_BITS = 12;
+
+    /** The number of values (rows), including nulls.
+     */
+    private long count = 0;
+
+    /** The number of null values.
+     */
+    private long nulls = 0;
+
+    /** The sketch estimating the number of distinct values.
+     */
+    private final HyperLogLog distinct = new HyperLogLog (HLL_BITS);
+
+    /** The smallest and largest values.
+     */
+    private Comparable min = null, max = null;
+
+    /** The histogram bucket boundaries: bucket b holds the values in
+     *  (bound [b], bound [b+1]], except bucket 0, which also holds bound [0].
+     */
+    private Comparable [] bound;
+
+    /** The number of values in each histogram bucket.
+     */
+    private long [] depth;
+
+    /***************************************************************************
+     * Compute the statistics of a column from scratch.
+     * @param tuples  the tuples of the table
+     * @param col     the position of the column
+     */
+    @SuppressWarnings("unchecked")
+    ColumnStats (List <Comparable []> tuples, int col)
+    {
+        List <Comparable> vals = new ArrayList <> (tuples.size ());
+        for (Comparable [] tup : tuples) {
+            count++;
+            if (tup [col] == null) { nulls++; continue; }
+            vals.add (tup [col]);
+            distinct.add (tup [col]);
+        } // for
+        Collections.sort (vals);
+
+        int n = vals.size (), nb = Math.min (BUCKETS, n);
+        bound = new Comparable [nb + 1];
+        depth = new long [nb];
+        if (n == 0) return;
+
+        min = bound [0] = vals.get (0);
+        max = vals.get (n - 1);
+        for (int b = 1; b <= nb; b++) bound [b] = vals.get ((int) ((long) b * n / nb) - 1);
+        int b = 0;
+        for (Comparable v : vals) {
+            while (v.compareTo (bound [b + 1]) > 0) b++;
+            depth [b]++;
+        } // for
+    } // constructor
+
+    /***************************************************************************
+     * Update the statistics for a value inserted into the column.  The bucket
+     * boundaries stay fixed, except that the outer ones widen to a new minimum
+     * or maximum.
+     * @param v  the inserted value
+     */
+    @SuppressWarnings("unchecked")
+    void add (Comparable v)
+    {
+        count++;
+        if (v == null) { nulls++; return; }
+        distinct.add (v);
+        if (min == null) {                                      // first value
+            min = max = v;
+            bound = new Comparable [] { v, v };
+            depth = new long [] { 1 };
+            return;
+        } // if
+        if (v.compareTo (min) < 0) min = bound [0] = v;
+        if (v.compareTo (max) > 0) max = bound [bound.length - 1] = v;
+
+        int lo = 0, hi = depth.length - 1;                      // first bucket whose upper bound >= v
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (v.compareTo (bound [mid + 1]) <= 0) hi = mid; else lo = mid + 1;
+        } // while
+        depth [lo]++;
+    } // add
+
+    /***************************************************************************
+     * Return the number of values (rows) in the column, including nulls.
+     * @return  the row count
+     */
+    public long getCount ()
+    {
+        return count;
+    } // getCount
+
+    /***************************************************************************
+     * Return the number of null values in the column.
+     * @return  the null count
+     */
+    public long getNulls ()
+    {
+        return nulls;
+    } // getNulls
+
+    /***************************************************************************
+     * Return the estimated number of distinct (non-null) values in the column.
+     * @return  the distinct count
+     */
+    public long getDistinct ()
+    {
+        return Math.min (count - nulls, distinct.estimate ());
+    } // getDistinct
+
+    /***************************************************************************
+     * Return the smallest value in the column.
+     * @return  the minimum, or null if the column has no values
+     */
+    public Comparable getMin ()
+    {
+        return min;
+    } // getMin
+
+    /***************************************************************************
+     * Return the largest value in the column.
+     * @return  the maximum, or null if the column has no values
+     */
+    public Comparable getMax ()
+    {
+        return max;
+    } // getMax
+
+    /***************************************************************************
+     * Estimate the fraction of rows whose value satisfies "value op v".
+     * @param op  the operator code (see Predicate, e.g., Predicate.LT)
+     * @param v   the constant compared with
+     * @return  the estimated selectivity, between 0 and 1
+     */
+    @SuppressWarnings("unchecked")
+    public double selectivity (int op, Comparable v)
+    {
+        if (count == nulls) return 0.0;
+        double eq = (v.compareTo (min) < 0 || v.compareTo (max) > 0) ? 0.0 : 1.0 / Math.max (1, getDistinct ());
+        double s;
+        switch (op) {
+        case Predicate.EQ: s = eq;                           break;
+        case Predicate.NE: s = 1.0 - eq;                     break;
+        case Predicate.LT: s = fractionBelow (v, false);     break;
+        case Predicate.LE: s = fractionBelow (v, true);      break;
+        case Predicate.GT: s = 1.0 - fractionBelow (v, true);  break;
+        default:           s = 1.0 - fractionBelow (v, false);
+        } // switch
+        return Math.max (0.0, Math.min (1.0, s)) * (count - nulls) / count;
+    } // selectivity
+
+    /***************************************************************************
+     * Estimate the fraction of non-null values below v using the histogram,
+     * interpolating linearly within the bucket containing v for numbers.
+     * @param v          the constant compared with
+     * @param inclusive  whether values equal to v count
+     * @return  the estimated fraction
+     */
+    @SuppressWarnings("unchecked")
+    private double fractionBelow (Comparable v, boolean inclusive)
+    {
+        long total = 0, below = 0;
+        for (long d : depth) total += d;
+        double part = 0.0;
+        for (int b = 0; b < depth.length; b++) {
+            int cHi = bound [b + 1].compareTo (v), cLo = bound [b].compareTo (v);
+            if (cHi < 0 || cHi == 0 && inclusive) {
+                below += depth [b];                             // whole bucket below v
+            } else {
+                if (cLo < 0) part = depth [b] * interpolate (bound [b], bound [b + 1], v);
+                break;
+            } // if
+        } // for
+        return (total == 0) ? 0.0 : (below + part) / total;
+    } // fractionBelow
+
+    /***************************************************************************
+     * Return the position of v between lo and hi as a fraction (0.5 if the
+     * values are not numbers).
+     * @param lo  the lower bound
+     * @param hi  the upper bound
+     * @param v   the value between them
+     * @return  the fraction of the way from lo to hi
+     */
+    private static double interpolate (Comparable lo, Comparable hi, Comparable v)
+    {
+        if (! (v instanceof Number)) return 0.5;
+        double l = ((Number) lo).doubleValue (), h = ((Number) hi).doubleValue ();
+        return (h > l) ? (((Number) v).doubleValue () - l) / (h - l) : 0.5;
+    } // interpolate
+
+    /***************************************************************************
+     * Convert the statistics to a string.
+     * @return  the string representation of the statistics
+     */
+    public String toString ()
+    {
+        return "ColumnStats (count = " + count + ", nulls = " + nulls + ", distinct = " + getDistinct ()
+             + ", min = " + min + ", max = " + max + ", buckets = " + depth.length + " )";
+    } // toString
+
+} // ColumnStats class
@@ -0,0 +1,202 @@
+/*******************************************************************************
+ * @file  ExternalSort.java
+ */
+
+import java.util.*;
+
+/*******************************************************************************
+ * This class sorts tuples with an external merge sort, so that the input need
+ * not fit in memory.  Tuples are read into a buffer until their packed size
+ * reaches the memory budget (see Table.setMemoryBudget); each full buffer is
+ * sorted and spilled as a run to a temporary FileList (packed records, see
+ * Table.pack) in the system's temporary directory, with string fields sized to
+ * the longest string of the run.  The runs are then merged with a heap holding
+ * the next tuple of each run, reading each run in blocks that together stay
+ * within the budget.  Input that fits in one buffer is sorted in memory without
+ * touching disk.  The sort is stable: tuples with equal sort columns keep their
+ * input order.  The run files are deleted when the merge is exhausted or fails,
+ * or by close.
+ */
+public class ExternalSort
+{
+    /** The table whose meta-data describes the tuples (used to pack them).
+     */
+    private final Table schema;
+
+    /** The order on tuples.
+     */
+    private final Comparator <Comparable []> order;
+
+    /** The memory budget in bytes of packed tuples.
+     */
+    private final long budget;
+
+    /** The runs spilled and not yet deleted.
+     */
+    private final List <FileList> runs = new ArrayList <> ();
+
+    /***************************************************************************
+     * Construct a sorter for tuples with the given schema.
+     * @param _schema  the table whose meta-data describes the tuples
+     * @param cols     the positions of the columns to sort on, major first
+     * @param desc     whether each column is sorted in descending order (missing
+     *                 flags mean ascending)
+     * @param _budget  the memory budget in bytes of packed tuples
+     */
+    ExternalSort (Table _schema, int [] cols, boolean [] desc, long _budget)
+    {
+        schema = _schema;
+        order  = comparator (cols, desc);
+        budget = Math.max (1, _budget);
+    } // constructor
+
+    /***************************************************************************
+     * Build the order on tuples given by sort columns and directions.
+     * @param cols  the positions of the columns to sort on, major first
+     * @param desc  whether each column is sorted in descending order
+     * @return  the comparator
+     */
+    @SuppressWarnings("unchecked")
+    static Comparator <Comparable []> comparator (final int [] cols, final boolean [] desc)
+    {
+        return (t1, t2) -> {
+            for (int k = 0; k < cols.length; k++) {
+                int c = t1 [cols [k]].compareTo (t2 [cols [k]]);
+                if (c != 0) return (k < desc.length && desc [k]) ? -c : c;
+            } // for
+            return 0;
+        };
+    } // comparator
+
+    /***************************************************************************
+     * Sort the tuples of an input.  The runs are generated before this method
+     * returns, while the merge happens as the returned iterator is read; the run
+     * files are deleted once it is exhausted.
+     * @param input  the tuples to sort
+     * @return  an iterator over the tuples in sorted order
+     */
+    Iterator <Comparable []> sort (Iterator <Comparable []> input)
+    {
+        long perRun = Math.max (1, budget / schema.tupleSize ());
+        List <Comparable []> buf = new ArrayList <> ();
+        try {
+            while (input.hasNext ()) {
+                buf.add (input.next ());
+                if (buf.size () < perRun || ! input.hasNext ()) continue;
+                runs.add (spill (buf));                         // buffer full: write a run
+                buf = new ArrayList <> ();
+            } // while
+
+            buf.sort (order);                                   // stable (TimSort)
+            if (runs.isEmpty ()) return buf.iterator ();
+            if (! buf.isEmpty ()) runs.add (spill (buf));
+        } catch (RuntimeException ex) {
+            close ();
+            throw ex;
+        } // try
+        return merge ((int) Math.max (1, perRun / runs.size ()));
+    } // sort
+
+    /***************************************************************************
+     * Delete the run files that are left, e.g., when the sorted tuples are not
+     * read to the end.
+     */
+    void close ()
+    {
+        for (FileList run : runs) run.delete ();
+        runs.clear ();
+    } // close
+
+    /***************************************************************************
+     * Sort a buffer of tuples and write it to a new run file.
+     * @param buf  the tuples
+     * @return  the run
+     */
+    private FileList spill (List <Comparable []> buf)
+    {
+        buf.sort (order);
+        FileList run = FileList.temp (schema.spillTable ("_run", schema.stringWidth (buf)));
+        for (Comparable [] tup : buf) {
+            if (! run.add (tup)) {
+                run.delete ();
+                throw new IllegalStateException ("ExternalSort.spill: unable to write tuple " + Arrays.toString (tup));
+            } // if
+        } // for
+        return run;
+    } // spill
+
+    /***************************************************************************
+     * Merge the sorted runs with a heap of cursors ordered by their current
+     * tuples (ties go to the earlier run, which keeps the sort stable).
+     * @param block  the number of tuples read from a run at a time
+     * @return  an iterator over the merged tuples
+     */
+    private Iterator <Comparable []> merge (final int block)
+    {
+        final PriorityQueue <Cursor> heap = new PriorityQueue <> ((c1, c2) -> {
+            int c = order.compare (c1.tup, c2.tup);
+            return (c != 0) ? c : Integer.compare (c1.run, c2.run);
+        });
+        try {
+            for (int r = 0; r < runs.size (); r++) {
+                Cursor cur = new Cursor (runs.get (r), r, block);
+                if (cur.advance ()) heap.add (cur);
+            } // for
+        } catch (RuntimeException ex) {
+            close ();
+            throw ex;
+        } // try
+
+        return new QueryPlan.Pipe () {
+            Comparable [] advance ()
+            {
+                try {
+                    Cursor cur = heap.poll ();
+                    if (cur == null) {                          // all runs merged
+                        close ();
+                        return null;
+                    } // if
+                    Comparable [] tup = cur.tup;
+                    if (cur.advance ()) heap.add (cur);
+                    return tup;
+                } catch (RuntimeException ex) {
+                    close ();
+                    throw ex;
+                } // try
+            } // advance
+        };
+    } // merge
+
+    /***************************************************************************
+     * This inner class reads a run in blocks, holding its current tuple.
+     */
+    private static class Cursor
+    {
+        final FileList file;
+        final int      run, block;
+        List <Comparable []> buf = Collections.emptyList ();
+        int pos = 0, next = 0;                                  // in buf, in file
+        Comparable [] tup;                                      // the current tuple
+
+        Cursor (FileList _file, int _run, int _block)
+        {
+            file  = _file;
+            run   = _run;
+            block = _block;
+        } // constructor
+
+        boolean advance ()
+        {
+            if (pos == buf.size ()) {
+                if (next == file.size ()) return false;
+                int to = Math.min (file.size (), next + block);
+                buf  = file.getRange (next, to);
+                next = to;
+                pos  = 0;
+            } // if
+            tup = buf.get (pos++);
+            return true;
+        } // advance
+    } // Cursor inner class
+
+} // ExternalSort class
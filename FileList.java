@@ -26,6 +26,10 @@ public class FileList
      */
     private RandomAccessFile file;
 
+    /** The name of the file that holds the tuples.
+     */
+    private final String fileName;
+
     /** The table it is used to store.
      */
     private final Table table;
@@ -44,18 +48,57 @@ public class FileList
      * @param _recordSize  the size of tuple in bytes.
      */
     public FileList (Table _table, int _recordSize)
+    {
+        this (_table, _recordSize, _table.getName () + EXT);
+    } // constructor
+
+    /***************************************************************************
+     * Construct a FileList stored in the given file.
+     * @param _table       the table whose meta-data describes the tuples
+     * @param _recordSize  the size of tuple in bytes
+     * @param _fileName    the path of the file
+     */
+    private FileList (Table _table, int _recordSize, String _fileName)
     {
         table      = _table;
         recordSize = _recordSize;
+        fileName   = _fileName;
 
         try {
-            file = new RandomAccessFile (table.getName () + EXT, "rw");
+            file = new RandomAccessFile (fileName, "rw");
         } catch (FileNotFoundException ex) {
             file = null;
             out.println ("FileList.constructor: unable to open - " + ex);
         } // try
     } // constructor
 
+    /***************************************************************************
+     * Create a FileList for temporary tuples (e.g., spilled by an operator) in a
+     * new file in the system's temporary directory.  The file should be removed
+     * with delete; it is also deleted when the JVM exits.
+     * @param _table  the table whose meta-data describes the tuples
+     * @return  the empty file list
+     */
+    static FileList temp (Table _table)
+    {
+        try {
+            File f = File.createTempFile (_table.getName () + "_", EXT);
+            f.deleteOnExit ();
+            return new FileList (_table, _table.tupleSize (), f.getPath ());
+        } catch (IOException ex) {
+            throw new UncheckedIOException ("FileList.temp: unable to create file - " + ex, ex);
+        } // try
+    } // temp
+
+    /***************************************************************************
+     * Return the table whose meta-data describes the tuples.
+     * @return  the table
+     */
+    Table getTable ()
+    {
+        return table;
+    } // getTable
+
     /***************************************************************************
      * Add a new tuple into the file list by packing it into a record and writing
      * this record to the random access file.  Write the record either at the
@@ -63,14 +106,19 @@ public class FileList
      * @param tuple  the tuple to add
      * @return  whether the addition succeeded
      */
-    public boolean add (Comparable [] tuple)
+    public synchronized boolean add (Comparable [] tuple)
     {
         byte [] record = null;  // FIX: table.pack (tuple);
         record = table.pack(tuple);
 //        for(int x=0;x<record.length;++x){
 //        	System.out.println(record[x]);
 //        }
+        if (record == null) {
+            out.println ("FileList.add: unable to pack tuple");
+            return false;
+        } // if
         try{
+        	file.seek((long) nRecords * recordSize); // append after the last record, get may have moved the file pointer
         	file.write(record);
         	//System.out.println("wrote to file");
         }
@@ -96,8 +144,9 @@ public class FileList
     public Comparable [] get (int i)
     {
         byte [] record = new byte [recordSize];
-        int startIndex = (i)*recordSize;
+        long startIndex = (long) i * recordSize;
         //System.out.println(recordSize);
+        synchronized (this) {           // seek and read must not interleave with other threads'
         try{
         	//System.out.println("Size: "+ file.length());
         	//System.out.println("Pointer at: "+file.getFilePointer());
@@ -108,6 +157,7 @@ public class FileList
         	System.out.println("Error in reading from file: "+e.getClass().getName());
         	return null;
         }
+        } // synchronized
        // for(int x=0;x<record.length;++x){
        // 	System.out.println(record[x]);
        // }
@@ -117,6 +167,52 @@ public class FileList
         return tuple;   // FIX: table.unpack (record);
     } // get
 
+    /***************************************************************************
+     * Get the ith record as packed bytes, without unpacking it into a tuple.
+     * @param i  the index of the record to get
+     * @return  the ith record
+     */
+    public synchronized byte [] getRecord (int i)
+    {
+        byte [] record = new byte [recordSize];
+        try {
+            file.seek ((long) i * recordSize);
+            file.readFully (record);
+        } catch (IOException ex) {
+            out.println ("FileList.getRecord: unable to read - " + ex);
+            return null;
+        } // try
+        return record;
+    } // getRecord
+
+    /***************************************************************************
+     * Get the tuples from position from up to (not including) position to, reading
+     * their records with a single sequential read.  Only the read holds the lock on
+     * the file, so threads scanning different ranges unpack in parallel.  A failed
+     * read throws an UncheckedIOException carrying the IOException.
+     * @param from  the index of the first tuple
+     * @param to    the index after the last tuple
+     * @return  the tuples in the range
+     */
+    public List <Comparable []> getRange (int from, int to)
+    {
+        byte [] block = new byte [(to - from) * recordSize];
+        synchronized (this) {
+            try {
+                file.seek ((long) from * recordSize);
+                file.readFully (block);
+            } catch (IOException ex) {
+                throw new UncheckedIOException ("FileList.getRange: unable to read - " + ex, ex);
+            } // try
+        } // synchronized
+
+        List <Comparable []> tups = new ArrayList <> (to - from);
+        for (int off = 0; off < block.length; off += recordSize) {
+            tups.add (table.unpack (Arrays.copyOfRange (block, off, off + recordSize)));
+        } // for
+        return tups;
+    } // getRange
+
     /***************************************************************************
      * Return the size of the file list in terms of the number of tuples/records.
      * @return  the number of tuples
@@ -138,4 +234,15 @@ public class FileList
         } // try
     } // close
 
+    /***************************************************************************
+     * Close and delete the file, e.g., when the list only held temporary tuples.
+     */
+    public void delete ()
+    {
+        close ();
+        if (! new File (fileName).delete ()) {
+            out.println ("FileList.delete: unable to delete - " + fileName);
+        } // if
+    } // delete
+
 } // FileList class
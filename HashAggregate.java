@@ -0,0 +1,367 @@
+/*******************************************************************************
+ * @file  HashAggregate.java
+ */
+
+import java.util.*;
+
+/*******************************************************************************
+ * This class provides the hash table behind Table.groupBy: it maps the values
+ * of the grouping columns of a tuple to a group and updates the group's
+ * aggregates (count, sum, min, max and avg of a column, or count (*)).
+ * Groups live in an open-addressing table with linear probing that hashes and
+ * compares the grouping columns of the tuple in place (instead of building a
+ * KeyType per tuple), and the aggregates of all groups are stored column-wise in primitive
+ * long and double arrays, so adding a tuple to an existing group allocates
+ * nothing.  Only min and max of non-numeric columns keep Comparable values.
+ */
+public class HashAggregate
+{
+    /** The aggregate functions.
+     */
+    static final int COUNT = 0, SUM = 1, MIN = 2, MAX = 3, AVG = 4;
+
+    /** The names of the aggregate functions, indexed by function code.
+     */
+    private static final String [] FUNCTION = { "count", "sum", "min", "max", "avg" };
+
+    /** The initial number of slots in the hash table (a power of 2).
+     */
+    private static final int INIT_SLOTS = 64;
+
+    /** The positions of the grouping columns in the input tuples.
+     */
+    private final int [] groupCols;
+
+    /** The function code of each aggregate.
+     */
+    private final int [] fn;
+
+    /** The position of the column of each aggregate (-1 for count (*)).
+     */
+    private final int [] col;
+
+    /** Whether the column of each aggregate is a number (else min/max use value).
+     */
+    private final boolean [] numeric;
+
+    /** The hash table: 1 + the group number at each slot (0 for an empty slot).
+     */
+    private int [] slot = new int [INIT_SLOTS];
+
+    /** The number of groups.
+     */
+    private int nGroups = 0;
+
+    /** The values of the grouping columns of each group.
+     */
+    private Comparable [] [] groupVal = new Comparable [INIT_SLOTS / 2] [];
+
+    /** The hash of the grouping values of each group (to rehash without them).
+     */
+    private int [] groupHash = new int [INIT_SLOTS / 2];
+
+    /** The number of non-null values (rows for count (*)) per aggregate and group.
+     */
+    private long [] [] n;
+
+    /** The integer accumulator (sum, min or max) per aggregate and group.
+     */
+    private long [] [] lAcc;
+
+    /** The real accumulator (sum, min or max) per aggregate and group.
+     */
+    private double [] [] dAcc;
+
+    /** The min or max value of non-numeric columns per aggregate and group.
+     */
+    private Comparable [] [] oAcc;
+
+    /***************************************************************************
+     * Construct an empty aggregation.
+     * @param _groupCols  the positions of the grouping columns
+     * @param _fn         the function code of each aggregate (e.g., COUNT)
+     * @param _col        the position of the column of each aggregate (-1 for *)
+     * @param domain      the domains of the columns of the input tuples
+     */
+    HashAggregate (int [] _groupCols, int [] _fn, int [] _col, Class [] domain)
+    {
+        groupCols = _groupCols;
+        fn        = _fn;
+        col       = _col;
+        numeric   = new boolean [fn.length];
+        int cap   = groupVal.length;
+        n    = new long [fn.length] [cap];
+        lAcc = new long [fn.length] [];
+        dAcc = new double [fn.length] [];
+        oAcc = new Comparable [fn.length] [];
+        for (int a = 0; a < fn.length; a++) {
+            if (col [a] < 0) continue;
+            numeric [a]  = Number.class.isAssignableFrom (domain [col [a]]);
+            boolean integral = numeric [a] && domain [col [a]] != Double.class && domain [col [a]] != Float.class;
+            if (fn [a] == COUNT) continue;
+            if (! numeric [a])                  oAcc [a] = new Comparable [cap];  // min, max by value
+            else if (integral && fn [a] != AVG) lAcc [a] = new long [cap];
+            else                                dAcc [a] = new double [cap];
+        } // for
+    } // constructor
+
+    /***************************************************************************
+     * Return the code of an aggregate function given its name.
+     * @param name  the function name (e.g., "avg"), in any case
+     * @return  the function code, or -1 if there is no such function
+     */
+    static int function (String name)
+    {
+        return Arrays.asList (FUNCTION).indexOf (name.toLowerCase ());
+    } // function
+
+    /***************************************************************************
+     * Return the domain of an aggregate's result: count gives Long, avg gives
+     * Double, sum gives Long or Double, and min and max keep the column's domain.
+     * @param f    the function code
+     * @param dom  the domain of the column (null for count (*))
+     * @return  the domain of the result
+     */
+    static Class resultDomain (int f, Class dom)
+    {
+        switch (f) {
+        case COUNT: return Long.class;
+        case AVG:   return Double.class;
+        case SUM:   return (dom == Double.class || dom == Float.class) ? Double.class : Long.class;
+        default:    return dom;
+        } // switch
+    } // resultDomain
+
+    /***************************************************************************
+     * Add a tuple to its group, creating the group if it is new.
+     * @param tup  the input tuple
+     */
+    @SuppressWarnings("unchecked")
+    void add (Comparable [] tup)
+    {
+        int g = find (tup, groupCols, hash (tup, groupCols));
+        for (int a = 0; a < fn.length; a++) {
+            if (col [a] < 0) { n [a] [g]++; continue; }            // count (*)
+            Comparable v = tup [col [a]];
+            if (v == null) continue;
+            boolean first = n [a] [g]++ == 0;
+            if (fn [a] == COUNT) continue;
+
+            if (! numeric [a]) {
+                int c = first ? 0 : v.compareTo (oAcc [a] [g]);
+                if (first || ((fn [a] == MIN) ? c < 0 : c > 0)) oAcc [a] [g] = v;
+            } else if (lAcc [a] != null) {
+                long x = ((Number) v).longValue ();
+                switch (fn [a]) {
+                case SUM: lAcc [a] [g] += x;                                               break;
+                case MIN: if (first || x < lAcc [a] [g]) lAcc [a] [g] = x;                 break;
+                default:  if (first || x > lAcc [a] [g]) lAcc [a] [g] = x;
+                } // switch
+            } else {
+                double x = ((Number) v).doubleValue ();
+                switch (fn [a]) {
+                case MIN: if (first || x < dAcc [a] [g]) dAcc [a] [g] = x;                 break;
+                case MAX: if (first || x > dAcc [a] [g]) dAcc [a] [g] = x;                 break;
+                default:  dAcc [a] [g] += x;                                               // sum, avg
+                } // switch
+            } // if
+        } // for
+    } // add
+
+    /***************************************************************************
+     * Merge the groups of another aggregation of the same aggregates (over other
+     * tuples) into this one, so that partial aggregations built independently,
+     * e.g., one per thread, combine into the aggregation of all their tuples.
+     * Groups new to this aggregation are added in the other's order.
+     * @param other  the partial aggregation to merge in
+     */
+    @SuppressWarnings("unchecked")
+    void merge (HashAggregate other)
+    {
+        int [] cols = new int [groupCols.length];
+        for (int j = 0; j < cols.length; j++) cols [j] = j;
+
+        for (int h = 0; h < other.nGroups; h++) {
+            int g = find (other.groupVal [h], cols, other.groupHash [h]);
+            for (int a = 0; a < fn.length; a++) {
+                long cnt = other.n [a] [h];
+                if (cnt == 0) continue;
+                boolean first = n [a] [g] == 0;
+                n [a] [g] += cnt;
+                if (fn [a] == COUNT) continue;
+
+                if (! numeric [a]) {
+                    Comparable v = other.oAcc [a] [h];
+                    int c = first ? 0 : v.compareTo (oAcc [a] [g]);
+                    if (first || ((fn [a] == MIN) ? c < 0 : c > 0)) oAcc [a] [g] = v;
+                } else if (lAcc [a] != null) {
+                    long x = other.lAcc [a] [h];
+                    switch (fn [a]) {
+                    case SUM: lAcc [a] [g] += x;                                           break;
+                    case MIN: if (first || x < lAcc [a] [g]) lAcc [a] [g] = x;             break;
+                    default:  if (first || x > lAcc [a] [g]) lAcc [a] [g] = x;
+                    } // switch
+                } else {
+                    double x = other.dAcc [a] [h];
+                    switch (fn [a]) {
+                    case MIN: if (first || x < dAcc [a] [g]) dAcc [a] [g] = x;             break;
+                    case MAX: if (first || x > dAcc [a] [g]) dAcc [a] [g] = x;             break;
+                    default:  dAcc [a] [g] += x;                                           // sum, avg
+                    } // switch
+                } // if
+            } // for
+        } // for
+    } // merge
+
+    /***************************************************************************
+     * Return the number of groups.
+     * @return  the group count
+     */
+    int size ()
+    {
+        return nGroups;
+    } // size
+
+    /***************************************************************************
+     * Build the output tuples: the grouping values followed by the aggregates,
+     * one tuple per group in the order the groups were first seen.  Aggregates
+     * over no (non-null) values are null, except counts, which are 0.
+     * @param domain  the domains of the output columns
+     * @return  the list of output tuples
+     */
+    List <Comparable []> result (Class [] domain)
+    {
+        List <Comparable []> rows = new ArrayList <> (nGroups);
+        int k = groupCols.length;
+        for (int g = 0; g < nGroups; g++) {
+            Comparable [] tup = Arrays.copyOf (groupVal [g], k + fn.length);
+            for (int a = 0; a < fn.length; a++) {
+                long cnt = n [a] [g];
+                if (fn [a] == COUNT)      tup [k + a] = cnt;
+                else if (cnt == 0)        tup [k + a] = null;
+                else if (fn [a] == AVG)   tup [k + a] = dAcc [a] [g] / cnt;
+                else if (! numeric [a])   tup [k + a] = oAcc [a] [g];
+                else if (lAcc [a] != null) tup [k + a] = box (lAcc [a] [g], domain [k + a]);
+                else                      tup [k + a] = box (dAcc [a] [g], domain [k + a]);
+            } // for
+            rows.add (tup);
+        } // for
+        return rows;
+    } // result
+
+    /***************************************************************************
+     * Convert an integer accumulator to a value of the given domain.
+     * @param x    the accumulated value
+     * @param dom  the domain (Long, Integer, Short or Byte)
+     * @return  the boxed value
+     */
+    private static Comparable box (long x, Class dom)
+    {
+        if (dom == Integer.class) return (int) x;
+        if (dom == Short.class)   return (short) x;
+        if (dom == Byte.class)    return (byte) x;
+        return x;
+    } // box
+
+    /***************************************************************************
+     * Convert a real accumulator to a value of the given domain.
+     * @param x    the accumulated value
+     * @param dom  the domain (Double or Float)
+     * @return  the boxed value
+     */
+    private static Comparable box (double x, Class dom)
+    {
+        return (dom == Float.class) ? (Comparable) (float) x : (Comparable) x;
+    } // box
+
+    /***************************************************************************
+     * Find the group of a tuple (or of a group of another aggregation), adding a
+     * new group for grouping values not seen before.
+     * @param tup   the tuple holding the grouping values
+     * @param cols  the positions of the grouping values in tup
+     * @param h     the hash of the grouping values
+     * @return  the group number
+     */
+    private int find (Comparable [] tup, int [] cols, int h)
+    {
+        int mask = slot.length - 1;
+        for (int s = h & mask; ; s = (s + 1) & mask) {
+            int g = slot [s] - 1;
+            if (g < 0) break;                                       // empty slot: a new group
+            if (groupHash [g] == h && sameGroup (groupVal [g], tup, cols)) return g;
+        } // for
+
+        if (nGroups == groupVal.length) grow ();
+        Comparable [] vals = new Comparable [cols.length];
+        for (int j = 0; j < cols.length; j++) vals [j] = tup [cols [j]];
+        groupVal [nGroups]  = vals;
+        groupHash [nGroups] = h;
+        place (nGroups);
+        return nGroups++;
+    } // find
+
+    /***************************************************************************
+     * Put a group into the first free slot of the hash table for its hash.
+     * @param g  the group number
+     */
+    private void place (int g)
+    {
+        int mask = slot.length - 1, s = groupHash [g] & mask;
+        while (slot [s] != 0) s = (s + 1) & mask;
+        slot [s] = g + 1;
+    } // place
+
+    /***************************************************************************
+     * Double the capacity of the group arrays and the hash table, keeping the
+     * table at most half full.
+     */
+    private void grow ()
+    {
+        int cap = 2 * groupVal.length;
+        groupVal  = Arrays.copyOf (groupVal, cap);
+        groupHash = Arrays.copyOf (groupHash, cap);
+        for (int a = 0; a < fn.length; a++) {
+            n [a] = Arrays.copyOf (n [a], cap);
+            if (lAcc [a] != null) lAcc [a] = Arrays.copyOf (lAcc [a], cap);
+            if (dAcc [a] != null) dAcc [a] = Arrays.copyOf (dAcc [a], cap);
+            if (oAcc [a] != null) oAcc [a] = Arrays.copyOf (oAcc [a], cap);
+        } // for
+        slot = new int [2 * cap];
+        for (int g = 0; g < nGroups; g++) place (g);
+    } // grow
+
+    /***************************************************************************
+     * Hash the grouping values of a tuple, with null hashing to 0.  Each value's
+     * hash code is mixed in with a multiplicative step, since combining them as
+     * KeyType does (7 * sum + hash) maps many multi-column groups to the same
+     * hash, and the result is spread so that probing on its low bits works well.
+     * @param tup   the tuple
+     * @param cols  the positions of the grouping values
+     * @return  the hash
+     */
+    private static int hash (Comparable [] tup, int [] cols)
+    {
+        int h = 0;
+        for (int c : cols) {
+            h = (h + Objects.hashCode (tup [c])) * 0x9E3779B9;
+            h ^= h >>> 15;
+        } // for
+        return h ^ (h >>> 16);
+    } // hash
+
+    /***************************************************************************
+     * Determine whether a group's values equal the grouping values of a tuple.
+     * @param vals  the group's values
+     * @param tup   the tuple
+     * @param cols  the positions of the grouping values in tup
+     * @return  whether they are equal
+     */
+    private static boolean sameGroup (Comparable [] vals, Comparable [] tup, int [] cols)
+    {
+        for (int j = 0; j < cols.length; j++) {
+            if (! Objects.equals (vals [j], tup [cols [j]])) return false;
+        } // for
+        return true;
+    } // sameGroup
+
+} // HashAggregate class
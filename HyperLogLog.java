@@ -0,0 +1,92 @@
+/*******************************************************************************
+ * @file  HyperLogLog.java
+ */
+
+import static java.lang.System.out;
+
+/*******************************************************************************
+ * This class provides HyperLogLog sketches, which estimate the number of
+ * distinct values added to them in a fixed, small amount of memory (2^p one-byte
+ * registers) with a relative standard error of about 1.04 / sqrt (2^p).  Column
+ * statistics (see ColumnStats) use them to estimate distinct counts without
+ * keeping a set of the values.
+ */
+public class HyperLogLog
+{
+    /** The number of index bits (the sketch has 2^p registers).
+     */
+    private final int p;
+
+    /** The registers: the maximum rank (position of the first 1-bit) seen per bucket.
+     */
+    private final byte [] reg;
+
+    /***************************************************************************
+     * Construct an empty sketch.
+     * @param _p  the number of index bits, between 4 and 16 (e.g., 12 for a
+     *            standard error of about 1.6%)
+     */
+    public HyperLogLog (int _p)
+    {
+        p   = Math.max (4, Math.min (16, _p));
+        reg = new byte [1 << p];
+    } // constructor
+
+    /***************************************************************************
+     * Add a value to the sketch.
+     * @param value  the value to add
+     */
+    public void add (Object value)
+    {
+        long x    = mix (value.hashCode ());
+        int  i    = (int) (x >>> (64 - p));
+        int  rank = Long.numberOfLeadingZeros ((x << p) | (1L << (p - 1))) + 1;
+        if (rank > reg [i]) reg [i] = (byte) rank;
+    } // add
+
+    /***************************************************************************
+     * Estimate the number of distinct values added to the sketch.  Small counts
+     * use linear counting on the empty registers.
+     * @return  the estimated distinct count
+     */
+    public long estimate ()
+    {
+        int    m     = reg.length, zeros = 0;
+        double sum   = 0.0;
+        for (byte r : reg) {
+            sum += 1.0 / (1L << r);
+            if (r == 0) zeros++;
+        } // for
+        double alpha = 0.7213 / (1.0 + 1.079 / m);
+        double e     = alpha * m * m / sum;
+        if (e <= 2.5 * m && zeros > 0) e = m * Math.log ((double) m / zeros);
+        return Math.round (e);
+    } // estimate
+
+    /***************************************************************************
+     * Spread a 32-bit hash code over 64 bits (SplitMix64 finalizer).
+     * @param h  the hash code
+     * @return  the mixed hash
+     */
+    private static long mix (int h)
+    {
+        long z = h * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    } // mix
+
+    /***************************************************************************
+     * The main method is used for testing purposes only.
+     * @param args  the command-line arguments
+     */
+    public static void main (String [] args)
+    {
+        for (int n : new int [] { 10, 1000, 100000, 1000000 }) {
+            HyperLogLog hll = new HyperLogLog (12);
+            for (int i = 0; i < n; i++) hll.add ("value" + i);
+            out.println ("distinct = " + n + ", estimate = " + hll.estimate ());
+        } // for
+    } // main
+
+} // HyperLogLog class
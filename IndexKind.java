@@ -0,0 +1,19 @@
+/*******************************************************************************
+ * @file  IndexKind.java
+ */
+
+/*******************************************************************************
+ * This enumeration lists the kinds of secondary (column) indexes a table can
+ * build with Table.createIndex.  Ordered kinds (BPTREE and TREEMAP) answer both
+ * equality and range conditions, while LINHASH answers equality conditions only.
+ * BITMAP keeps a compressed bitmap of rows per value, suited to columns with few
+ * distinct values, and answers "==" and "!=" terms combined with "&" and "|".
+ */
+public enum IndexKind
+{
+    BPTREE,         // B+Tree (BpTree), ordered
+    LINHASH,        // Linear Hashing (LinHash), unordered
+    TREEMAP,        // Red-Black Tree (java.util.TreeMap), ordered
+    BITMAP          // a RoaringBitmap of rows per value, for low-cardinality columns
+
+} // IndexKind enum
@@ -57,6 +57,18 @@ public class KeyType
         return compareTo (k) == 0;
     } // equals
 
+    /***************************************************************************
+     * Determine whether this key equals another object.  Hash-based maps (e.g.,
+     * LinHash, HashMap) look keys up through this method rather than equals (KeyType).
+     * @param obj  the other object (to compare with this)
+     * @return  true if obj is an equal key, false otherwise
+     */
+    public boolean equals (Object obj)
+    {
+        return obj instanceof KeyType && key.length == ((KeyType) obj).key.length
+                                      && equals ((KeyType) obj);
+    } // equals
+
     /***************************************************************************
      * Compute a hash code for this object (equal objects should produce the same
      * hash code).
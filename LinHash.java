@@ -21,6 +21,10 @@ public class LinHash <K, V>
     /** The number of slots (for key-value pairs) per bucket.
      */
     private static final int SLOTS = 4;
+
+    /** The load factor (keys per home bucket slot) above which a bucket is split.
+     */
+    private static final double MAX_LOAD = 0.75;
     
     /** The class for type K.
      */
@@ -69,6 +73,10 @@ public class LinHash <K, V>
      */
     private int split = 0;
     
+    /** The number of keys in the hash table.
+     */
+    private int nKeys = 0;
+    
     /***************************************************************************
      * Construct a hash table that uses Linear Hashing.
      * @param classK    the class for keys (K)
@@ -90,29 +98,20 @@ public class LinHash <K, V>
      * @author Kim Bradley
      */
     public Set <Map.Entry <K, V>> entrySet ()
-	{
-	    Set <Map.Entry <K, V>> enSet = new HashSet <> ();
-	    
-	    // iterate through buckets in table
-	    for (Bucket b : hTable) {
-		// iterate through key-value pairs in current bucket
-        	for (int i=0; i < b.nKeys; i++) {
-		    // add pair to entry set
-		    enSet.add(new AbstractMap.SimpleEntry<K,V> (b.key[i], b.value[i]));
-        	}
-        	
-        	// if current bucket has overflow
-        	if (b.next != null) {
-		    // iterate through key-value pairs in overflow
-		    for (int i=0; i < b.next.nKeys; i++) {
-			// add pair to entry set
-			enSet.add(new AbstractMap.SimpleEntry<K,V> (b.next.key[i], b.next.value[i]));
-		    }
-        	}
-	    }
+    {
+        Set <Map.Entry <K, V>> enSet = new HashSet <> ();
+        
+        // iterate through buckets in table, following each overflow chain
+        for (Bucket home : hTable) {
+            for (Bucket b = home; b != null; b = b.next) {
+                for (int i = 0; i < b.nKeys; i++) {
+                    enSet.add (new AbstractMap.SimpleEntry <K, V> (b.key [i], b.value [i]));
+                } // for
+            } // for
+        } // for
             
-	    return enSet;
-	} // entrySet
+        return enSet;
+    } // entrySet
     
     /***************************************************************************
      * Given the key, look up the value in the hash table.
@@ -122,34 +121,24 @@ public class LinHash <K, V>
      */
     public V get (Object key)
     {
-        int i = h (key);
+        if (hTable.isEmpty ()) return null;
         
-        // if key is in the higher resolution hash buckets
-        if (i < split)
-	    i = h2(key);
+        // search the home bucket and its overflow chain
+        for (Bucket b = hTable.get (bucketOf (key)); b != null; b = b.next) {
+            count++;
+            for (int j = 0; j < b.nKeys; j++) {
+                if (b.key [j].equals (key)) return b.value [j];
+            } // for
+        } // for
         
-        Bucket b = hTable.get(i);
-        count++;
-        // loop through bucket keys
-        for (int j=0; j<b.nKeys; j++) {
-	    if (b.key[j].equals(key))
-		return b.value[j];
-        }
-        // if key not found, check bucket overflow
-        if (b.next != null) {
-	    b = b.next;
-	    count++;
-	    for (int j=0; j<b.nKeys; j++) {
-	    	if (b.key[j].equals(key))
-		    return b.value[j];
-	    }
-        }
-	
         return null;
     } // get
     
     /***************************************************************************
-     * Put the key-value pair in the hash table.
+     * Put the key-value pair in the hash table, replacing the value if the key
+     * is already present.  When the load factor exceeds MAX_LOAD, the next bucket
+     * in linear order is split; keys that still collide stay in the overflow
+     * chain, so a run of keys with one hash value does not grow the table.
      * @param key    the key to insert
      * @param value  the value to insert
      * @return  null (not the previous value)
@@ -157,179 +146,79 @@ public class LinHash <K, V>
      */
     public V put (K key, V value)
     {
-    	//out.println("add " +key+ " : " +value);
-        
-        int i = h (key);
-        // if hashed key is smaller than split, use higher resolution hash
-        if (i < split)
-	    i = h2(key);
-    	
         // if table is empty, add the initial number of home buckets
-        if (hTable.size() == 0) {
-	    for (int j=0; j < mod1; j++) {
-		hTable.add(new Bucket(null));
-	    }
-        }
+        if (hTable.isEmpty ()) {
+            for (int j = 0; j < mod1; j++) hTable.add (new Bucket (null));
+        } // if
         
-        Bucket b = hTable.get(i);
-        // if bucket is not full
-        if (b.nKeys != SLOTS) {
-	    // find open slot
-	    for (int j=0; j < SLOTS; j++) {
-		if (b.key[j] == null) {
-		    // add key-value pair and increment number of keys
-		    b.key[j] = key;
-		    b.value[j] = value;
-		    b.nKeys++;
-		    break;
-		}
-	    }
-	    
-	// if bucket is full
-	} else {
-
-	    // if bucket has overflow
-	    if (b.next != null) {
-		// find open slot
-		for (int j=0; j < SLOTS; j++) {
-		    if (b.next.key[j] == null) {
-			// add key-value pair and increment number of keys
-			b.next.key[j] = key;
-			b.next.value[j] = value;
-			b.next.nKeys++;
-			break;
-		    }
-		}
-		
-	    // if bucket doesn't have overflow
-	    } else {
-		// create overflow bucket
-		b.next = new Bucket(null);
-		// add key-value pair and increment number of keys
-		b.next.key[0] = key;
-		b.next.value[0] = value;
-		b.next.nKeys++;
-	    }
-	    
-	    // overflow causes split; split bucket of current split index
-	    b = hTable.get(split);
-	    Bucket newb = new Bucket(null);	
-	    
-	    // iterate through old bucket key-value pairs
-	    int num = b.nKeys;
-	    for (int j=0; j < num; j++) {
-		// if current key needs to be moved
-		if (h(b.key[j]) != h2(b.key[j])) {
-		    // add to new bucket
-		    newb.key[newb.nKeys] = b.key[j];
-		    newb.value[newb.nKeys] = b.value[j];
-		    newb.nKeys++;
-		    // remove from old bucket
-		    b.key[j] = null;
-		    b.value[j] = null;
-		    b.nKeys--;   
-		}   
-	    }
-	    
-	    // iterate through old bucket's overflow key-value pairs
-	    if (b.next != null) {
-		num = b.next.nKeys;
-		for (int j=0; j < num; j++) {
-		    // if current key needs to be moved
-		    if (h(b.next.key[j]) != h2(b.next.key[j])) {
-			// add to new bucket
-			newb.key[newb.nKeys] = b.next.key[j];
-			newb.value[newb.nKeys] = b.next.value[j];
-			newb.nKeys++;
-			// remove from old bucket
-			b.next.key[j] = null;
-			b.next.value[j] = null;
-			b.next.nKeys--;
-		    }  
-		}
-	    }
-	    
-	    // remove intermediate null slots from old bucket and overflow
-	    List<K> listK = new ArrayList<K>(Arrays.asList(b.key));
-	    List<V> listV = new ArrayList<V>(Arrays.asList(b.value));
-	    // iterate through slots and rotate nulls to the end of the bucket
-	    for (int j=0; j < listK.size(); j++) {
-	    	if (listK.get(j) == null) {
-		    listK.remove(null);
-		    listK.add(null);
-		    listV.remove(null);
-		    listV.add(null);
-	    	}
-	    }
-	    
-	    // rotate overflow values into open slots of old bucket (if needed)
-	    if (b.next != null) {
-		List<K> listKO = new ArrayList<K>(Arrays.asList(b.next.key));
-		List<V> listVO = new ArrayList<V>(Arrays.asList(b.next.value));
-		for (int j=b.nKeys; j < SLOTS; j++) {
-		    if ((b.next != null) && (b.next.nKeys != 0)) {
-	    		for (int k=0; k < SLOTS; k++) {
-			    if (listKO.get(k) != null) {
-				listK.set(j, listKO.get(k));
-				listKO.set(k, null);
-				listV.set(j, listVO.get(k));
-				listVO.set(k, null);
-				b.nKeys++;
-				b.next.nKeys--;
-			    }
-			}
-		    }
-		}
-		
-		// iterate through slots and rotate nulls to the end of the bucket
-		for (int j=0; j < listKO.size(); j++) {
-		    if (listKO.get(j) == null) {
-			listKO.remove(null);
-			listKO.add(null);
-			listVO.remove(null);
-			listVO.add(null);
-		    }
-		}
-		// iterate through slots and place list values back into arrays
-		for (int j=0; j < SLOTS; j++) {
-		    b.next.key[j] = listKO.get(j);
-		    b.next.value[j] = listVO.get(j);
-	    	} 
-		// remove overflow bucket if empty
-		if (b.next.nKeys == 0)
-		    b.next = null;
-	
-	    }//if
-	    
-	    // iterate through slots and place list values back into arrays
-	    for (int j=0; j < SLOTS; j++) {
-		b.key[j] = listK.get(j);
-	    	b.value[j] = listV.get(j);
-	    }
-	    
-	    hTable.add(newb);
-	    split++;
-	    // check if split index needs to be reset and mods incremented
-	    if (split == mod1) {
-		split = 0;
-		mod1 = mod2;
-		mod2 = 2 * mod1;
-	    }
-	    
-        }//else
-	
+        Bucket home = hTable.get (bucketOf (key));
+        for (Bucket b = home; b != null; b = b.next) {     // existing key: replace value
+            for (int j = 0; j < b.nKeys; j++) {
+                if (b.key [j].equals (key)) {
+                    b.value [j] = value;
+                    return null;
+                } // if
+            } // for
+        } // for
+        
+        nKeys++;
+        place (home, key, value);
+        if (nKeys > MAX_LOAD * SLOTS * hTable.size ()) splitNext ();   // too full: split
         return null;
     } // put
     
     /***************************************************************************
-     * Return the size (SLOTS * number of home buckets) of the hash table. 
+     * Return the size (number of keys) of the hash table. 
      * @return  the size of the hash table
      */
     public int size ()
     {
-        return SLOTS * (mod1 + split);
+        return nKeys;
     } // size
     
+    /***************************************************************************
+     * Place a key-value pair in the first slot free in a bucket chain, adding an
+     * overflow bucket at the end of the chain if all are full.
+     * @param home   the home bucket of the chain
+     * @param key    the key to place
+     * @param value  the value to place
+     */
+    private void place (Bucket home, K key, V value)
+    {
+        Bucket b = home;
+        while (b.nKeys == SLOTS) {
+            if (b.next == null) b.next = new Bucket (null);
+            b = b.next;
+        } // while
+        b.key [b.nKeys]   = key;
+        b.value [b.nKeys] = value;
+        b.nKeys++;
+    } // place
+    
+    /***************************************************************************
+     * Split the bucket at the split index: its pairs are rehashed with the high
+     * resolution hash function into itself and a new bucket at the end of the
+     * table.  Once every bucket of the round has split, the moduli double.
+     */
+    private void splitNext ()
+    {
+        Bucket old = hTable.get (split);
+        hTable.set (split, new Bucket (null));
+        hTable.add (new Bucket (null));
+        
+        for (Bucket b = old; b != null; b = b.next) {
+            for (int j = 0; j < b.nKeys; j++) place (hTable.get (h2 (b.key [j])), b.key [j], b.value [j]);
+        } // for
+        
+        split++;
+        // check if split index needs to be reset and mods incremented
+        if (split == mod1) {
+            split = 0;
+            mod1  = mod2;
+            mod2  = 2 * mod1;
+        } // if
+    } // splitNext
+    
     /***************************************************************************
      * Print the hash table.
      * @author Kim Bradley
@@ -338,31 +227,33 @@ public class LinHash <K, V>
     {
         out.println ("Hash Table (Linear Hashing)");
         out.println ("-------------------------------------------");
-	
-    	for (int i=0; i < hTable.size(); i++) {
-	    out.print(i + ": \t");
-	    for (int j=0; j < SLOTS; j++) {
-		if (hTable.get(i).key[j] == null)
-		    out.print("[ null ] ");
-		else
-		    out.print("[ " + hTable.get(i).key[j] + " ] ");
-	    }
-	    // if current bucket has overflow
-	    if (hTable.get(i).next != null) {
-		out.print("--> ");
-		for (int j=0; j < SLOTS; j++) {
-		    if (hTable.get(i).next.key[j] == null)
-			out.print("[ null ] ");
-		    else
-			out.print("[ " + hTable.get(i).next.key[j] + " ] ");
-    		}
-	    }
-	    out.println();
-	}
-	
-	out.println ("-------------------------------------------");
+        
+        for (int i = 0; i < hTable.size (); i++) {
+            out.print (i + ": \t");
+            for (Bucket b = hTable.get (i); b != null; b = b.next) {
+                if (b != hTable.get (i)) out.print ("--> ");
+                for (int j = 0; j < SLOTS; j++) {
+                    out.print ((j < b.nKeys) ? "[ " + b.key [j] + " ] " : "[ null ] ");
+                } // for
+            } // for
+            out.println ();
+        } // for
+        
+        out.println ("-------------------------------------------");
     } // print
     
+    /***************************************************************************
+     * Return the home bucket of a key, using the high resolution hash function
+     * for buckets that have already split in this round.
+     * @param key  the key to hash
+     * @return  the position of the key's home bucket
+     */
+    private int bucketOf (Object key)
+    {
+        int i = h (key);
+        return (i < split) ? h2 (key) : i;
+    } // bucketOf
+    
     /***************************************************************************
      * Hash the key using the low resolution hash function.
      * @param key  the key to hash
@@ -370,7 +261,7 @@ public class LinHash <K, V>
      */
     private int h (Object key)
     {
-	return key.hashCode () % mod1;
+        return (key.hashCode () & 0x7fffffff) % mod1;
     } // h
     
     /***************************************************************************
@@ -380,7 +271,7 @@ public class LinHash <K, V>
      */
     private int h2 (Object key)
     {
-	return key.hashCode () % mod2;
+        return (key.hashCode () & 0x7fffffff) % mod2;
     } // h2
     
     /***************************************************************************
@@ -399,6 +290,14 @@ public class LinHash <K, V>
         } // for
         out.println ("-------------------------------------------");
         out.println ("Average number of buckets accessed = " + ht.count / (double) nKeys);
+
+        LinHash <Integer, Integer> same = new LinHash <> (Integer.class, Integer.class, 2);
+        int nSame = 1000, found = 0;                        // keys colliding in every bucket
+        for (int i = 0; i < nSame; i++) same.put (i << 20, i);
+        for (int i = 0; i < nSame; i++) if (same.get (i << 20) == i) found++;
+        boolean ok = found == nSame && same.hTable.size () <= nSame / (MAX_LOAD * SLOTS) + 2;
+        out.println ("colliding keys: " + found + " found, " + same.hTable.size () + " buckets "
+                     + (ok ? "PASS" : "FAIL"));
     } // main
     
 } // LinHash class
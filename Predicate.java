@@ -0,0 +1,384 @@
+/*******************************************************************************
+ * @file  Predicate.java
+ */
+
+/*******************************************************************************
+ * This class provides compiled selection conditions.  A condition such as
+ * "1979 < year & year < 1990" is compiled once per query (see Table.compile)
+ * into a tree of predicates whose column positions are resolved and whose
+ * constants are converted to the column's domain, so that evaluating it on a
+ * tuple neither re-parses the condition nor allocates.  "&" and "|" nodes
+ * short-circuit and order their terms so that the outcome is known as early as
+ * possible: an "&" tries first the cheap terms that are likely false and an "|"
+ * the cheap terms that are likely true.  Every node counts how often it is
+ * evaluated and passes, and "&" and "|" nodes periodically re-rank their terms
+ * from these observed pass rates, so the order adapts to the data at runtime.
+ */
+public abstract class Predicate
+{
+    /** Comparison operator codes.
+     */
+    static final int EQ = 0, NE = 1, LT = 2, LE = 3, GT = 4, GE = 5;
+
+    /** Comparison operator symbols, indexed by operator code.
+     */
+    static final String [] SYMBOL = { "==", "!=", "<", "<=", ">", ">=" };
+
+    /** Number of evaluations of an "&" or "|" node between re-rankings of its terms.
+     */
+    static final int ADAPT_INTERVAL = 1024;
+
+    /** Weight (in evaluations) of the estimated pass rate against the observed one.
+     */
+    private static final double PRIOR = 16.0;
+
+    /** The number of times the predicate was evaluated and the number of times it
+     *  held (updated without synchronization, so parallel scans may lose counts).
+     */
+    long evals = 0, passes = 0;
+
+    /** The estimated pass rate before any evaluation (e.g., from column statistics).
+     */
+    double estimate = 0.5;
+
+    /***************************************************************************
+     * Evaluate the predicate on a tuple, counting the outcome.
+     * @param tup  the tuple to check
+     * @return  whether the tuple satisfies the predicate
+     */
+    public final boolean eval (Comparable [] tup)
+    {
+        evals++;
+        if (! test (tup)) return false;
+        passes++;
+        return true;
+    } // eval
+
+    /***************************************************************************
+     * Test the predicate on a tuple.
+     * @param tup  the tuple to check
+     * @return  whether the tuple satisfies the predicate
+     */
+    abstract boolean test (Comparable [] tup);
+
+    /***************************************************************************
+     * Return the estimated cost of evaluating the predicate once, in units of an
+     * integer comparison.
+     * @return  the cost
+     */
+    abstract double cost ();
+
+    /***************************************************************************
+     * Return the pass rate of the predicate: the observed rate, smoothed towards
+     * the estimate while there are few observations.
+     * @return  the pass rate, between 0 and 1
+     */
+    double passRate ()
+    {
+        return (passes + PRIOR * estimate) / (evals + PRIOR);
+    } // passRate
+
+    /***************************************************************************
+     * Return a report of the evaluations and pass rates of the predicate and its
+     * terms, one line per node, with terms in their current order.
+     * #usage out.println (pred.profile ())
+     * @return  the profile
+     */
+    public String profile ()
+    {
+        StringBuilder sb = new StringBuilder ();
+        profile (sb, "");
+        return sb.toString ();
+    } // profile
+
+    /***************************************************************************
+     * Append the profile line of this node and (for "&" and "|") its terms.
+     * @param sb      the builder receiving the lines
+     * @param indent  the indentation of this node
+     */
+    void profile (StringBuilder sb, String indent)
+    {
+        sb.append (String.format ("%s%-40s evals = %d, passes = %d, pass rate = %.3f, cost = %.1f%n",
+                                  indent, label (), evals, passes, passRate (), cost ()));
+    } // profile
+
+    /***************************************************************************
+     * Return the label of this node in a profile.
+     * @return  the label
+     */
+    String label ()
+    {
+        return toString ();
+    } // label
+
+    /***************************************************************************
+     * Return the estimated cost of comparing values of a domain, in units of an
+     * integer comparison: strings compare character by character and real numbers
+     * need special cases for NaN and signed zeros.
+     * @param dom  the domain of the values compared
+     * @return  the cost
+     */
+    static double cost (Class dom)
+    {
+        if (dom == String.class) return 4.0;
+        if (dom == Double.class || dom == Float.class) return 1.5;
+        return 1.0;
+    } // cost
+
+    /***************************************************************************
+     * Return the operator code for a comparison operator symbol.
+     * @param op  the comparison operator (e.g., "<=")
+     * @return  the operator code, or -1 if op is not a comparison operator
+     */
+    static int opCode (String op)
+    {
+        for (int i = 0; i < SYMBOL.length; i++) if (SYMBOL [i].equals (op)) return i;
+        return -1;
+    } // opCode
+
+    /***************************************************************************
+     * Return the operator obtained by swapping the operands (e.g., a < b is b > a).
+     * @param op  the operator code
+     * @return  the operator code with the operands swapped
+     */
+    static int flip (int op)
+    {
+        switch (op) {
+        case LT: return GT;
+        case LE: return GE;
+        case GT: return LT;
+        case GE: return LE;
+        default: return op;
+        } // switch
+    } // flip
+
+    /***************************************************************************
+     * Determine whether a compareTo result satisfies the operator.
+     * @param op  the operator code
+     * @param c   the result of compareTo
+     * @return  whether the comparison holds
+     */
+    static boolean holds (int op, int c)
+    {
+        switch (op) {
+        case EQ: return c == 0;
+        case NE: return c != 0;
+        case LT: return c <  0;
+        case LE: return c <= 0;
+        case GT: return c >  0;
+        default: return c >= 0;
+        } // switch
+    } // holds
+
+    /***************************************************************************
+     * This inner class compares a column with a constant (col op value) or with
+     * another column (col op col2).
+     */
+    static class Comparison extends Predicate
+    {
+        final int        col;        // the lhs column
+        final int        op;         // the operator code
+        final Comparable value;      // the rhs constant (if col2 < 0)
+        final int        col2;       // the rhs column, or -1 for a constant
+        final String     text;       // the term as written
+        final double     cost;       // the cost of one comparison
+
+        Comparison (int _col, int _op, Comparable _value, int _col2, String _text, double _cost)
+        {
+            col   = _col;
+            op    = _op;
+            value = _value;
+            col2  = _col2;
+            text  = _text;
+            cost  = _cost;
+        } // constructor
+
+        @SuppressWarnings("unchecked")
+        boolean test (Comparable [] tup)
+        {
+            return holds (op, tup [col].compareTo ((col2 < 0) ? value : tup [col2]));
+        } // test
+
+        double cost ()
+        {
+            return cost;
+        } // cost
+
+        public String toString ()
+        {
+            return text;
+        } // toString
+    } // Comparison inner class
+
+    /***************************************************************************
+     * This inner class holds the common part of "&" and "|" nodes: the terms, kept
+     * in the order in which they are evaluated, and their periodic re-ranking.
+     */
+    abstract static class Junction extends Predicate
+    {
+        volatile Predicate [] terms; // replaced (not modified) when re-ranked
+        private int sinceAdapt = 0;  // evaluations since the last re-ranking
+
+        Junction (Predicate [] _terms)
+        {
+            terms = _terms;
+        } // constructor
+
+        /** Return the rank of a term: terms with lower ranks are evaluated first.
+         */
+        abstract double rank (Predicate term);
+
+        /** Re-rank the terms (and, recursively, their terms) by cost and pass rate.
+         */
+        void adapt ()
+        {
+            sinceAdapt = 0;
+            Predicate [] ts = terms.clone ();
+            for (Predicate p : ts) if (p instanceof Junction) ((Junction) p).adapt ();
+            double [] r = new double [ts.length];
+            for (int i = 0; i < ts.length; i++) r [i] = rank (ts [i]);
+            for (int i = 1; i < ts.length; i++) {               // insertion sort: few terms
+                Predicate p = ts [i];
+                double    q = r [i];
+                int j = i - 1;
+                for ( ; j >= 0 && r [j] > q; j--) { ts [j + 1] = ts [j]; r [j + 1] = r [j]; }
+                ts [j + 1] = p;
+                r [j + 1]  = q;
+            } // for
+            terms = ts;
+        } // adapt
+
+        /** Count an evaluation, re-ranking the terms every ADAPT_INTERVAL of them.
+         */
+        Predicate [] current ()
+        {
+            if (++sinceAdapt >= ADAPT_INTERVAL) adapt ();
+            return terms;
+        } // current
+
+        double cost ()
+        {
+            double c = 0.0;
+            for (Predicate p : terms) c += p.cost ();
+            return c;
+        } // cost
+
+        void profile (StringBuilder sb, String indent)
+        {
+            super.profile (sb, indent);
+            for (Predicate p : terms) p.profile (sb, indent + "    ");
+        } // profile
+    } // Junction inner class
+
+    /***************************************************************************
+     * This inner class holds a conjunction of predicates ("&").  Terms are ranked
+     * by cost / (1 - pass rate), i.e., the cost per tuple eliminated.
+     */
+    static class And extends Junction
+    {
+        And (Predicate [] _terms)
+        {
+            super (_terms);
+        } // constructor
+
+        boolean test (Comparable [] tup)
+        {
+            for (Predicate p : current ()) if (! p.eval (tup)) return false;
+            return true;
+        } // test
+
+        double rank (Predicate term)
+        {
+            return term.cost () / Math.max (1E-6, 1.0 - term.passRate ());
+        } // rank
+
+        String label ()
+        {
+            return "&";
+        } // label
+
+        public String toString ()
+        {
+            return join (terms, " & ");
+        } // toString
+    } // And inner class
+
+    /***************************************************************************
+     * This inner class holds a disjunction of predicates ("|").  Terms are ranked
+     * by cost / pass rate, i.e., the cost per tuple accepted.
+     */
+    static class Or extends Junction
+    {
+        Or (Predicate [] _terms)
+        {
+            super (_terms);
+        } // constructor
+
+        boolean test (Comparable [] tup)
+        {
+            for (Predicate p : current ()) if (p.eval (tup)) return true;
+            return false;
+        } // test
+
+        double rank (Predicate term)
+        {
+            return term.cost () / Math.max (1E-6, term.passRate ());
+        } // rank
+
+        String label ()
+        {
+            return "|";
+        } // label
+
+        public String toString ()
+        {
+            return join (terms, " | ");
+        } // toString
+    } // Or inner class
+
+    /***************************************************************************
+     * This inner class holds a predicate that is always true or always false.
+     */
+    static class Constant extends Predicate
+    {
+        final boolean truth;
+
+        Constant (boolean _truth)
+        {
+            truth    = _truth;
+            estimate = truth ? 1.0 : 0.0;
+        } // constructor
+
+        boolean test (Comparable [] tup)
+        {
+            return truth;
+        } // test
+
+        double cost ()
+        {
+            return 0.0;
+        } // cost
+
+        public String toString ()
+        {
+            return String.valueOf (truth);
+        } // toString
+    } // Constant inner class
+
+    /***************************************************************************
+     * Join the string forms of predicates with a separator.
+     * @param terms  the predicates
+     * @param sep    the separator
+     * @return  the joined string
+     */
+    private static String join (Predicate [] terms, String sep)
+    {
+        StringBuilder sb = new StringBuilder ();
+        for (int i = 0; i < terms.length; i++) {
+            if (i > 0) sb.append (sep);
+            sb.append (terms [i]);
+        } // for
+        return sb.toString ();
+    } // join
+
+} // Predicate class
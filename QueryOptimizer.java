@@ -0,0 +1,454 @@
+/*******************************************************************************
+ * @file  QueryOptimizer.java
+ */
+
+import java.util.*;
+
+import static java.lang.System.out;
+
+/*******************************************************************************
+ * This class provides a rule-based optimizer for query plans (see QueryPlan).
+ * It rewrites a plan into an equivalent one in three passes:
+ *   1. push selections down: each conjunct of a selection moves below sorts,
+ *      projections, joins, unions and minuses to just above the lowest operator
+ *      whose output has all of its attributes, and selections meeting there
+ *      merge;
+ *   2. order joins: in a left-deep chain of joins, the rhs inputs are joined in
+ *      increasing order of estimated result size (from the tables' statistics,
+ *      see Table.analyze), as far as the join conditions allow;
+ *   3. prune columns: below each join only the attributes used by the join or
+ *      above it are kept, and each projection keeps only the attributes used
+ *      above it (stacked projections merge).
+ * The output has the same attributes in the same order as the original plan.
+ */
+public class QueryOptimizer
+{
+    /***************************************************************************
+     * Optimize a query plan.
+     * @param plan  the plan to optimize
+     * @return  the optimized plan
+     */
+    public static QueryPlan optimize (QueryPlan plan)
+    {
+        QueryPlan p = push (plan);
+        p = orderJoins (p);
+        return prune (p, null);
+    } // optimize
+
+    //------------------------ Selection Pushdown ------------------------------
+
+    /***************************************************************************
+     * Push the selections of a plan down as far as they can go.
+     * @param p  the plan (may be null)
+     * @return  the rewritten plan
+     */
+    private static QueryPlan push (QueryPlan p)
+    {
+        if (p == null || p instanceof QueryPlan.Scan) return p;
+        if (p instanceof QueryPlan.Select) {
+            QueryPlan.Select s = (QueryPlan.Select) p;
+            return pushInto (push (s.child), s.conjuncts);
+        } // if
+        return rebuild (p, push (left (p)), push (right (p)));
+    } // push
+
+    /***************************************************************************
+     * Apply conjuncts to (already pushed down) plan p, placing each one as low
+     * as it can go.  A selection at the top of p is merged with the conjuncts.
+     * @param p          the plan
+     * @param conjuncts  the conjuncts to apply
+     * @return  the plan with the conjuncts applied
+     */
+    private static QueryPlan pushInto (QueryPlan p, List <String> conjuncts)
+    {
+        if (conjuncts.isEmpty ()) return p;
+
+        if (p instanceof QueryPlan.Select) {                        // merge adjacent selections
+            QueryPlan.Select s = (QueryPlan.Select) p;
+            List <String> all = new ArrayList <> (s.conjuncts);
+            all.addAll (conjuncts);
+            return pushInto (s.child, all);
+        } // if
+
+        if (p instanceof QueryPlan.Project || p instanceof QueryPlan.OrderBy) {   // these keep the names
+            return rebuild (p, pushInto (left (p), conjuncts), null);
+        } // if
+
+        if (p instanceof QueryPlan.Union || p instanceof QueryPlan.Minus) {
+            QueryPlan l = left (p), r = right (p);
+            if (Arrays.equals (l.schema.attributes (), r.schema.attributes ())) {
+                return rebuild (p, pushInto (l, conjuncts), pushInto (r, conjuncts));
+            } // if
+        } // if
+
+        if (p instanceof QueryPlan.Join) {
+            QueryPlan.Join j = (QueryPlan.Join) p;
+            List <String> toLeft = new ArrayList <> (), toRight = new ArrayList <> (), stay = new ArrayList <> ();
+            Set <String> lAttr = new HashSet <> (Arrays.asList (j.left.schema.attributes ()));
+            Map <String, String> rAttr = rhsNames (j);
+            for (String c : conjuncts) {
+                Set <String> used = attributes (c, j.schema);
+                if (lAttr.containsAll (used)) {
+                    toLeft.add (c);
+                } else if (rAttr.keySet ().containsAll (used) && Collections.disjoint (used, lAttr)) {
+                    toRight.add (rename (c, rAttr));
+                } else {
+                    stay.add (c);
+                } // if
+            } // for
+            QueryPlan q = new QueryPlan.Join (pushInto (j.left, toLeft), j.condition, pushInto (j.right, toRight));
+            return stay.isEmpty () ? q : new QueryPlan.Select (q, stay);
+        } // if
+
+        return new QueryPlan.Select (p, conjuncts);
+    } // pushInto
+
+    //------------------------ Join Ordering -----------------------------------
+
+    /***************************************************************************
+     * Order the rhs inputs of every left-deep chain of joins greedily: at each
+     * step, join the input giving the smallest estimated result among those
+     * whose join condition only refers to attributes already joined.  The
+     * leftmost input stays first and every rhs input keeps its name, so the
+     * output attributes keep their names and a projection restores their order.
+     * Chains are only reordered when all their output attribute names are
+     * distinct, so that the conditions cannot change meaning.
+     * @param p  the plan
+     * @return  the rewritten plan
+     */
+    private static QueryPlan orderJoins (QueryPlan p)
+    {
+        if (p == null || p instanceof QueryPlan.Scan) return p;
+        if (! (p instanceof QueryPlan.Join)) return rebuild (p, orderJoins (left (p)), orderJoins (right (p)));
+
+        List <QueryPlan> inputs = new ArrayList <> ();              // the rhs inputs, bottom up
+        List <String>    conds  = new ArrayList <> ();
+        QueryPlan q = p;
+        for ( ; q instanceof QueryPlan.Join; q = ((QueryPlan.Join) q).left) {
+            inputs.add (0, orderJoins (((QueryPlan.Join) q).right));
+            conds.add (0, ((QueryPlan.Join) q).condition);
+        } // for
+        QueryPlan base = orderJoins (q);
+
+        String [] original = p.schema.attributes ();
+        if (inputs.size () < 2 || new HashSet <> (Arrays.asList (original)).size () < original.length) {
+            QueryPlan r = base;
+            for (int i = 0; i < inputs.size (); i++) r = new QueryPlan.Join (r, conds.get (i), inputs.get (i));
+            return r;
+        } // if
+
+        QueryPlan r = base;
+        boolean reordered = false;
+        while (! inputs.isEmpty ()) {
+            int    best    = -1;
+            double bestEst = Double.MAX_VALUE;
+            Set <String> avail = new HashSet <> (Arrays.asList (r.schema.attributes ()));
+            for (int i = 0; i < inputs.size (); i++) {
+                if (! avail.containsAll (lhsAttributes (conds.get (i)))) continue;
+                double e = estimate (new QueryPlan.Join (r, conds.get (i), inputs.get (i)));
+                if (e < bestEst) { best = i; bestEst = e; }
+            } // for
+            if (best < 0) best = 0;                                 // keep the original order
+            if (best > 0) reordered = true;
+            r = new QueryPlan.Join (r, conds.remove (best), inputs.remove (best));
+        } // while
+
+        return reordered ? new QueryPlan.Project (r, String.join (" ", original)) : r;
+    } // orderJoins
+
+    /***************************************************************************
+     * Estimate the number of tuples a plan produces.  Selections use the
+     * estimated selectivity of their conditions, and an equi-join of inputs with
+     * sizes n1 and n2 produces n1 * n2 / max (d1, d2) tuples, where d1 and d2
+     * are the numbers of distinct values of the joined columns (the input size
+     * when unknown, as for a foreign key join).
+     * @param p  the plan
+     * @return  the estimated number of tuples
+     */
+    static double estimate (QueryPlan p)
+    {
+        if (p instanceof QueryPlan.Scan)   return ((QueryPlan.Scan) p).table.rows ().size ();
+        if (p instanceof QueryPlan.Select) {
+            QueryPlan.Select s = (QueryPlan.Select) p;
+            return estimate (s.child) * s.child.schema.selectivity (s.pred);
+        } // if
+        if (p instanceof QueryPlan.Project || p instanceof QueryPlan.OrderBy) return estimate (left (p));
+        if (p instanceof QueryPlan.Union)   return estimate (left (p)) + estimate (right (p));
+        if (p instanceof QueryPlan.Minus)   return estimate (left (p));
+
+        QueryPlan.Join j = (QueryPlan.Join) p;
+        double n1 = estimate (j.left), n2 = estimate (j.right);
+        if (j.jc == null) return 0.0;
+        if (j.jc.eq1.length == 0) return n1 * n2 / 3.0;
+        double d = 1.0;
+        for (int i = 0; i < j.jc.eq1.length; i++) {
+            d = Math.max (d, Math.max (distinct (j.left, j.left.schema.attributes () [j.jc.eq1 [i]], n1),
+                                       distinct (j.right, j.right.schema.attributes () [j.jc.eq2 [i]], n2)));
+        } // for
+        return n1 * n2 / d;
+    } // estimate
+
+    /***************************************************************************
+     * Estimate the number of distinct values of an attribute in a plan's output,
+     * from the statistics of the table it comes from.
+     * @param p      the plan
+     * @param attr   the attribute name
+     * @param size   the estimated output size of the plan (the default)
+     * @return  the estimated number of distinct values
+     */
+    private static double distinct (QueryPlan p, String attr, double size)
+    {
+        while (p instanceof QueryPlan.Select || p instanceof QueryPlan.Project || p instanceof QueryPlan.OrderBy) {
+            p = left (p);
+        } // while
+        if (! (p instanceof QueryPlan.Scan)) return size;
+        Table t = ((QueryPlan.Scan) p).table;
+        ColumnStats s = Arrays.asList (t.attributes ()).contains (attr) ? t.getStats (attr) : null;
+        return (s == null) ? size : Math.min (size, s.getDistinct ());
+    } // distinct
+
+    //------------------------ Column Pruning ----------------------------------
+
+    /***************************************************************************
+     * Remove the attributes that are not needed from the inputs of joins.
+     * @param p       the plan
+     * @param needed  the attributes of p's output used above it (null for all)
+     * @return  the rewritten plan
+     */
+    private static QueryPlan prune (QueryPlan p, Set <String> needed)
+    {
+        if (p == null || p instanceof QueryPlan.Scan) return p;
+
+        if (p instanceof QueryPlan.Project) {                       // keep only what is needed above
+            QueryPlan.Project pr = (QueryPlan.Project) p;
+            List <String> keep = new ArrayList <> ();
+            for (String a : pr.schema.attributes ()) if (needed == null || needed.contains (a)) keep.add (a);
+            if (keep.isEmpty ()) keep = Arrays.asList (pr.schema.attributes ());
+            QueryPlan child = prune (pr.child, new HashSet <> (keep));
+            if (child instanceof QueryPlan.Project) child = ((QueryPlan.Project) child).child;   // merge stacked projections
+            if (Arrays.asList (child.schema.attributes ()).equals (keep)) return child;
+            return new QueryPlan.Project (child, String.join (" ", keep));
+        } // if
+
+        if (p instanceof QueryPlan.Select || p instanceof QueryPlan.OrderBy) {
+            Set <String> need = null;
+            if (needed != null) {
+                need = new HashSet <> (needed);
+                if (p instanceof QueryPlan.Select) {
+                    for (String c : ((QueryPlan.Select) p).conjuncts) need.addAll (attributes (c, p.schema));
+                } else {
+                    need.addAll (attributes (((QueryPlan.OrderBy) p).columns, p.schema));
+                } // if
+            } // if
+            return rebuild (p, prune (left (p), need), null);
+        } // if
+
+        if (p instanceof QueryPlan.Join && needed != null) {
+            QueryPlan.Join j = (QueryPlan.Join) p;
+            Set <String> lNeed = new HashSet <> (lhsAttributes (j.condition));
+            Set <String> rNeed = new HashSet <> (rhsAttributes (j.condition));
+            Map <String, String> rAttr = rhsNames (j);
+            for (String a : needed) {
+                if (Arrays.asList (j.left.schema.attributes ()).contains (a)) lNeed.add (a);
+                else if (rAttr.containsKey (a)) rNeed.add (rAttr.get (a));
+            } // for
+            return new QueryPlan.Join (narrow (prune (j.left, lNeed), lNeed), j.condition,
+                                       narrow (prune (j.right, rNeed), rNeed));
+        } // if
+
+        return rebuild (p, prune (left (p), null), prune (right (p), null));
+    } // prune
+
+    /***************************************************************************
+     * Project a plan onto the needed attributes, unless it needs them all.
+     * @param p     the plan
+     * @param need  the needed attributes
+     * @return  the projected plan
+     */
+    private static QueryPlan narrow (QueryPlan p, Set <String> need)
+    {
+        StringBuilder keep = new StringBuilder ();
+        int n = 0;
+        for (String a : p.schema.attributes ()) {
+            if (! need.contains (a)) continue;
+            keep.append ((n++ > 0) ? " " + a : a);
+        } // for
+        return (n == 0 || n == p.schema.attributes ().length) ? p : new QueryPlan.Project (p, keep.toString ());
+    } // narrow
+
+    //------------------------ Plan Utilities ----------------------------------
+
+    /***************************************************************************
+     * Return the (lhs) child of an operator.
+     * @param p  the operator
+     * @return  the child, or null for a scan
+     */
+    private static QueryPlan left (QueryPlan p)
+    {
+        if (p instanceof QueryPlan.Select)  return ((QueryPlan.Select) p).child;
+        if (p instanceof QueryPlan.Project) return ((QueryPlan.Project) p).child;
+        if (p instanceof QueryPlan.OrderBy) return ((QueryPlan.OrderBy) p).child;
+        if (p instanceof QueryPlan.Join)    return ((QueryPlan.Join) p).left;
+        if (p instanceof QueryPlan.Union)   return ((QueryPlan.Union) p).left;
+        if (p instanceof QueryPlan.Minus)   return ((QueryPlan.Minus) p).left;
+        return null;
+    } // left
+
+    /***************************************************************************
+     * Return the rhs child of a binary operator.
+     * @param p  the operator
+     * @return  the rhs child, or null for a unary operator or scan
+     */
+    private static QueryPlan right (QueryPlan p)
+    {
+        if (p instanceof QueryPlan.Join)  return ((QueryPlan.Join) p).right;
+        if (p instanceof QueryPlan.Union) return ((QueryPlan.Union) p).right;
+        if (p instanceof QueryPlan.Minus) return ((QueryPlan.Minus) p).right;
+        return null;
+    } // right
+
+    /***************************************************************************
+     * Rebuild an operator with new children.
+     * @param p  the operator
+     * @param l  the new (lhs) child
+     * @param r  the new rhs child (ignored for unary operators)
+     * @return  the rebuilt operator
+     */
+    private static QueryPlan rebuild (QueryPlan p, QueryPlan l, QueryPlan r)
+    {
+        if (p instanceof QueryPlan.Select)  return new QueryPlan.Select (l, ((QueryPlan.Select) p).conjuncts);
+        if (p instanceof QueryPlan.Project) return new QueryPlan.Project (l, ((QueryPlan.Project) p).attributeList);
+        if (p instanceof QueryPlan.OrderBy) {
+            QueryPlan.OrderBy o = (QueryPlan.OrderBy) p;
+            return new QueryPlan.OrderBy (l, o.columns, o.descending);
+        } // if
+        if (p instanceof QueryPlan.Join)    return new QueryPlan.Join (l, ((QueryPlan.Join) p).condition, r);
+        if (p instanceof QueryPlan.Union)   return new QueryPlan.Union (l, r);
+        if (p instanceof QueryPlan.Minus)   return new QueryPlan.Minus (l, r);
+        return p;
+    } // rebuild
+
+    /***************************************************************************
+     * Map the output names of a join's rhs attributes to their names in the rhs.
+     * @param j  the join
+     * @return  the map from output name to rhs name
+     */
+    private static Map <String, String> rhsNames (QueryPlan.Join j)
+    {
+        Map <String, String> names = new HashMap <> ();
+        String [] out = j.schema.attributes (), in = j.right.schema.attributes ();
+        for (int i = 0; i < in.length; i++) names.put (out [out.length - in.length + i], in [i]);
+        return names;
+    } // rhsNames
+
+    /***************************************************************************
+     * Return the attributes of a schema that a condition refers to.
+     * @param condition  the condition
+     * @param schema     the schema resolving the names
+     * @return  the set of attribute names used
+     */
+    private static Set <String> attributes (String condition, Table schema)
+    {
+        List <String> attr = Arrays.asList (schema.attributes ());
+        Set <String>  used = new HashSet <> ();
+        for (String t : condition.trim ().split ("\\s+")) if (attr.contains (t)) used.add (t);
+        return used;
+    } // attributes
+
+    /***************************************************************************
+     * Replace the attribute names in a condition.
+     * @param condition  the condition
+     * @param names      the map from old to new names
+     * @return  the condition with the names replaced
+     */
+    private static String rename (String condition, Map <String, String> names)
+    {
+        StringBuilder sb = new StringBuilder ();
+        for (String t : condition.trim ().split ("\\s+")) {
+            if (sb.length () > 0) sb.append (" ");
+            sb.append (names.containsKey (t) ? names.get (t) : t);
+        } // for
+        return sb.toString ();
+    } // rename
+
+    /***************************************************************************
+     * Return the lhs attributes of a join condition ("a op b & c op d").
+     * @param condition  the join condition
+     * @return  the lhs attribute names
+     */
+    private static List <String> lhsAttributes (String condition)
+    {
+        String [] token = condition.trim ().split ("\\s+");
+        List <String> attrs = new ArrayList <> ();
+        for (int i = 0; i < token.length; i += 4) attrs.add (token [i]);
+        return attrs;
+    } // lhsAttributes
+
+    /***************************************************************************
+     * Return the rhs attributes of a join condition ("a op b & c op d").
+     * @param condition  the join condition
+     * @return  the rhs attribute names
+     */
+    private static List <String> rhsAttributes (String condition)
+    {
+        String [] token = condition.trim ().split ("\\s+");
+        List <String> attrs = new ArrayList <> ();
+        for (int i = 2; i < token.length; i += 4) attrs.add (token [i]);
+        return attrs;
+    } // rhsAttributes
+
+    //------------------------ Testing ---------------------------------------
+
+    /***************************************************************************
+     * The main method is used for testing purposes only: it checks that a chain
+     * of joins under a projection is both reordered (the selective join with
+     * star first) and pruned (each join input keeps only the attributes used),
+     * without stacked projections, and that the optimized plan gives the same
+     * tuples as the original.
+     * @param args  the command-line arguments
+     */
+    public static void main (String [] args)
+    {
+        Table movie  = new Table ("movie", "title year length studioName", "String Integer Integer String", "title");
+        Table studio = new Table ("studio", "name address president", "String String String", "name");
+        Table star   = new Table ("star", "stitle sname birthdate", "String String String", "stitle sname");
+        for (int i = 0; i < 20000; i++) {
+            movie.append (new Comparable [] { "title" + i, 1900 + i % 100, 90 + i % 60, "studio" + i % 40 }, new int [] { 0 });
+        } // for
+        for (int i = 0; i < 40; i++) studio.append (new Comparable [] { "studio" + i, "address" + i, "president" + i }, new int [] { 0 });
+        for (int i = 0; i < 50; i++) star.append (new Comparable [] { "title" + 7 * i, "star" + i, "born" + i }, new int [] { 0, 1 });
+        movie.analyze ();
+        studio.analyze ();
+        star.analyze ();
+
+        QueryPlan plan = movie.query ().join ("studioName == name", studio.query ())
+                                       .join ("title == stitle", star.query ()).project ("title studio_address");
+        QueryPlan opt  = plan.optimize ();
+        String    s    = opt.toString ();
+        out.println ("optimized: " + s);
+
+        boolean reordered = s.indexOf ("title == stitle") < s.indexOf ("studioName == name");
+        boolean pruned    = s.startsWith ("movie.project (title studioName).") && s.contains ("star.project (stitle)")
+                            && s.contains ("studio.project (name address)");
+        boolean single    = ! s.matches (".*\\.project \\([^()]*\\)\\.project .*");
+        List <String> expected = sorted (plan.execute ()), actual = sorted (opt.execute ());
+        boolean same      = expected.equals (actual) && expected.size () == 50;
+        out.println ("reordered " + reordered + ", pruned " + pruned + ", no stacked projections " + single
+                     + ", same " + actual.size () + " tuples " + same + ": "
+                     + ((reordered && pruned && single && same) ? "PASS" : "FAIL"));
+    } // main
+
+    /***************************************************************************
+     * Return the tuples of a table as sorted strings, for comparing results.
+     * @param t  the table
+     * @return  the sorted tuples
+     */
+    private static List <String> sorted (Table t)
+    {
+        List <String> rows = new ArrayList <> ();
+        for (Comparable [] tup : t.rows ()) rows.add (Arrays.toString (tup));
+        Collections.sort (rows);
+        return rows;
+    } // sorted
+
+} // QueryOptimizer class
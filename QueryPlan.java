@@ -0,0 +1,529 @@
+/*******************************************************************************
+ * @file  QueryPlan.java
+ */
+
+import java.util.*;
+
+import static java.lang.System.out;
+
+/*******************************************************************************
+ * This class provides lazy query plans: trees of relational operators that are
+ * executed in one pipelined pass (Volcano style).  Each operator pulls tuples
+ * from its children through an iterator and passes them on one at a time, so
+ * no intermediate table (with its tuple list and index) is built.  Only
+ * pipeline breakers hold state: the build side of a join, the lhs of a union
+ * (a hash set of the tuples seen), the rhs of a minus and the sorted runs of
+ * an order by.  Only execute materializes a table.
+ * #usage movie.query ().select ("year > 1970").project ("title studioName")
+ *                      .join ("studioName == name", studio.query ()).execute ()
+ */
+public abstract class QueryPlan
+       implements Iterable <Comparable []>
+{
+    /** An empty table describing the schema of the operator's output, used to
+     *  resolve attribute names and compile conditions.
+     */
+    final Table schema;
+
+    /***************************************************************************
+     * Construct an operator with the given output schema.
+     * @param _schema  the table whose meta-data describes the output
+     */
+    QueryPlan (Table _schema)
+    {
+        schema = _schema;
+    } // constructor
+
+    /***************************************************************************
+     * Return a plan that scans a table.
+     * @param table  the table to scan
+     * @return  the scan operator
+     */
+    public static QueryPlan scan (Table table)
+    {
+        return new Scan (table);
+    } // scan
+
+    /***************************************************************************
+     * Add a selection on top of this plan.
+     * @param condition  the selection condition (see Table.select)
+     * @return  the selection operator
+     */
+    public QueryPlan select (String condition)
+    {
+        return new Select (this, condition);
+    } // select
+
+    /***************************************************************************
+     * Add a projection on top of this plan.
+     * @param attributeList  the attributes to project onto
+     * @return  the projection operator
+     */
+    public QueryPlan project (String attributeList)
+    {
+        return new Project (this, attributeList);
+    } // project
+
+    /***************************************************************************
+     * Add an equi- or theta-join of this plan (lhs) and another plan (rhs).
+     * @param condition  the join condition (see Table.join)
+     * @param right      the plan producing the rhs tuples
+     * @return  the join operator
+     */
+    public QueryPlan join (String condition, QueryPlan right)
+    {
+        return new Join (this, condition, right);
+    } // join
+
+    /***************************************************************************
+     * Add a union (with duplicates eliminated) of this plan and another plan.
+     * @param right  the plan producing the rhs tuples
+     * @return  the union operator
+     */
+    public QueryPlan union (QueryPlan right)
+    {
+        return new Union (this, right);
+    } // union
+
+    /***************************************************************************
+     * Add a difference of this plan and another plan.
+     * @param right  the plan producing the tuples to remove
+     * @return  the minus operator
+     */
+    public QueryPlan minus (QueryPlan right)
+    {
+        return new Minus (this, right);
+    } // minus
+
+    /***************************************************************************
+     * Add an ordering of this plan's tuples on the given columns, each ascending
+     * unless its descending flag is set (see Table.orderBy).  The sorted tuples
+     * stream out of the merge of the sorted runs.
+     * #usage movie.query ().select ("year > 1970").orderBy ("year title", true)
+     * @param columns     the attributes to order on
+     * @param descending  whether each attribute is ordered in descending order
+     * @return  the order by operator
+     */
+    public QueryPlan orderBy (String columns, boolean... descending)
+    {
+        return new OrderBy (this, columns, descending);
+    } // orderBy
+
+    /***************************************************************************
+     * Rewrite the plan into an equivalent one that is cheaper to execute (see
+     * QueryOptimizer).
+     * #usage movie.query ().join ("studioName == name", studio.query ())
+     *                      .select ("year > 1990").optimize ().execute ()
+     * @return  the optimized plan
+     */
+    public QueryPlan optimize ()
+    {
+        return QueryOptimizer.optimize (this);
+    } // optimize
+
+    /***************************************************************************
+     * Execute the plan, materializing its output (the root) as a table.
+     * @return  the table holding the output tuples
+     */
+    public Table execute ()
+    {
+        out.println ("RA> execute " + this);
+
+        Table  result  = new Table (schema, "_result");
+        int [] keyCols = result.match (result.keys ());
+        for (Comparable [] tup : this) result.append (tup, keyCols);
+        return result;
+    } // execute
+
+    /***************************************************************************
+     * Return a new iterator over the operator's output tuples.
+     * @return  the iterator
+     */
+    public abstract Iterator <Comparable []> iterator ();
+
+    /***************************************************************************
+     * This inner class provides an iterator that produces its next tuple on
+     * demand by calling advance, which returns null at the end.
+     */
+    abstract static class Pipe
+           implements Iterator <Comparable []>
+    {
+        private Comparable [] next    = null;
+        private boolean       primed  = false;
+
+        /** Return the next output tuple, or null if there are no more.
+         */
+        abstract Comparable [] advance ();
+
+        public boolean hasNext ()
+        {
+            if (! primed) { next = advance (); primed = true; }
+            return next != null;
+        } // hasNext
+
+        public Comparable [] next ()
+        {
+            if (! hasNext ()) throw new NoSuchElementException ();
+            primed = false;
+            return next;
+        } // next
+    } // Pipe inner class
+
+    /***************************************************************************
+     * This inner class scans the tuples of a table.
+     */
+    static class Scan extends QueryPlan
+    {
+        final Table table;
+
+        Scan (Table _table)
+        {
+            super (_table);
+            table = _table;
+        } // constructor
+
+        public Iterator <Comparable []> iterator ()
+        {
+            return table.rows ().iterator ();
+        } // iterator
+
+        public String toString ()
+        {
+            return table.getName ();
+        } // toString
+    } // Scan inner class
+
+    /***************************************************************************
+     * This inner class passes on the tuples of its child that satisfy a
+     * condition, compiled once against the child's schema.  The condition is kept
+     * as its "&"-ed parts (conjuncts), so the optimizer can move them separately.
+     */
+    static class Select extends QueryPlan
+    {
+        final QueryPlan     child;
+        final List <String> conjuncts;
+        final Predicate     pred;
+
+        Select (QueryPlan _child, String _condition)
+        {
+            this (_child, conjuncts (_condition));
+        } // constructor
+
+        Select (QueryPlan _child, List <String> _conjuncts)
+        {
+            super (_child.schema);
+            child     = _child;
+            conjuncts = _conjuncts;
+            Predicate [] terms = new Predicate [conjuncts.size ()];
+            for (int i = 0; i < terms.length; i++) terms [i] = _child.schema.compile (conjuncts.get (i));
+            pred = (terms.length == 1) ? terms [0] : new Predicate.And (terms);
+        } // constructor
+
+        public Iterator <Comparable []> iterator ()
+        {
+            final Iterator <Comparable []> in = child.iterator ();
+            return new Pipe () {
+                Comparable [] advance ()
+                {
+                    while (in.hasNext ()) {
+                        Comparable [] tup = in.next ();
+                        if (pred.eval (tup)) return tup;
+                    } // while
+                    return null;
+                } // advance
+            };
+        } // iterator
+
+        public String toString ()
+        {
+            StringBuilder sb = new StringBuilder ();
+            for (String c : conjuncts) {
+                if (sb.length () > 0) sb.append (" & ");
+                sb.append (c.contains (" | ") ? "(" + c + ")" : c);
+            } // for
+            return child + ".select (" + sb + ")";
+        } // toString
+    } // Select inner class
+
+    /***************************************************************************
+     * This inner class projects the tuples of its child onto some attributes.
+     * As in Table.project, the key is kept if all of it is projected, otherwise
+     * all projected attributes form the key.
+     */
+    static class Project extends QueryPlan
+    {
+        final QueryPlan child;
+        final String    attributeList;
+        final int []    colPos;
+
+        Project (QueryPlan _child, String _attributeList)
+        {
+            super (projectSchema (_child.schema, _attributeList.split (" ")));
+            child         = _child;
+            attributeList = _attributeList;
+            colPos        = _child.schema.match (_attributeList.split (" "));
+        } // constructor
+
+        public Iterator <Comparable []> iterator ()
+        {
+            final Iterator <Comparable []> in = child.iterator ();
+            return new Pipe () {
+                Comparable [] advance ()
+                {
+                    return in.hasNext () ? Table.extractTup (in.next (), colPos) : null;
+                } // advance
+            };
+        } // iterator
+
+        public String toString ()
+        {
+            return child + ".project (" + attributeList + ")";
+        } // toString
+    } // Project inner class
+
+    /***************************************************************************
+     * This inner class joins the tuples of two children.  With equality terms,
+     * the rhs is hashed on its join key once per execution and the lhs streams
+     * through the hash table; otherwise the rhs is buffered and each lhs tuple is
+     * compared with all of it.  As in Table.join, the rhs attributes are prefixed
+     * with the rhs name.
+     */
+    static class Join extends QueryPlan
+    {
+        final QueryPlan           left, right;
+        final String              condition;
+        final Table.JoinCondition jc;
+
+        Join (QueryPlan _left, String _condition, QueryPlan _right)
+        {
+            super (joinSchema (_left.schema, _right.schema));
+            left      = _left;
+            right     = _right;
+            condition = _condition;
+            jc        = _left.schema.parseJoin (_condition, _right.schema);
+        } // constructor
+
+        public Iterator <Comparable []> iterator ()
+        {
+            if (jc == null) return Collections.<Comparable []> emptyList ().iterator ();
+
+            final Iterator <Comparable []> in = left.iterator ();
+            final Map <Object, List <Comparable []>> hTable = new HashMap <> ();
+            final List <Comparable []> all = new ArrayList <> ();
+            for (Comparable [] tup2 : right) {                          // build on the rhs
+                if (jc.eq2.length == 0) { all.add (tup2); continue; }
+                Object k = Table.hashKey (tup2, jc.eq2);
+                List <Comparable []> bucket = hTable.get (k);
+                if (bucket == null) {
+                    bucket = new ArrayList <> ();
+                    hTable.put (k, bucket);
+                } // if
+                bucket.add (tup2);
+            } // for
+
+            return new Pipe () {
+                Comparable []            tup1  = null;
+                Iterator <Comparable []> match = Collections.emptyIterator ();
+
+                Comparable [] advance ()
+                {
+                    while (true) {
+                        while (match.hasNext ()) {
+                            Comparable [] tup2 = match.next ();
+                            if (jc.residual (tup1, tup2, 0)) return Table.concat (tup1, tup2);
+                        } // while
+                        if (! in.hasNext ()) return null;
+                        tup1 = in.next ();
+                        List <Comparable []> bucket = (jc.eq1.length == 0) ? all
+                                                    : hTable.get (Table.hashKey (tup1, jc.eq1));
+                        match = (bucket == null) ? Collections.<Comparable []> emptyIterator () : bucket.iterator ();
+                    } // while
+                } // advance
+            };
+        } // iterator
+
+        public String toString ()
+        {
+            return left + ".join (" + condition + ", " + right + ")";
+        } // toString
+    } // Join inner class
+
+    /***************************************************************************
+     * This inner class unites the tuples of two children, passing on each
+     * distinct tuple value the first time it is seen.
+     */
+    static class Union extends QueryPlan
+    {
+        final QueryPlan left, right;
+
+        Union (QueryPlan _left, QueryPlan _right)
+        {
+            super (_left.schema);
+            left  = _left;
+            right = _right;
+        } // constructor
+
+        public Iterator <Comparable []> iterator ()
+        {
+            final Iterator <Comparable []> in1 = left.iterator (), in2 = right.iterator ();
+            final Set <KeyType> seen = new HashSet <> ();
+            return new Pipe () {
+                Comparable [] advance ()
+                {
+                    while (in1.hasNext () || in2.hasNext ()) {
+                        Comparable [] tup = in1.hasNext () ? in1.next () : in2.next ();
+                        if (seen.add (new KeyType (tup))) return tup;
+                    } // while
+                    return null;
+                } // advance
+            };
+        } // iterator
+
+        public String toString ()
+        {
+            return left + ".union (" + right + ")";
+        } // toString
+    } // Union inner class
+
+    /***************************************************************************
+     * This inner class passes on the tuples of its lhs child whose values do not
+     * occur in its rhs child (hashed once per execution).
+     */
+    static class Minus extends QueryPlan
+    {
+        final QueryPlan left, right;
+
+        Minus (QueryPlan _left, QueryPlan _right)
+        {
+            super (_left.schema);
+            left  = _left;
+            right = _right;
+        } // constructor
+
+        public Iterator <Comparable []> iterator ()
+        {
+            final Set <KeyType> drop = new HashSet <> ();
+            for (Comparable [] tup : right) drop.add (new KeyType (tup));
+            final Iterator <Comparable []> in = left.iterator ();
+            return new Pipe () {
+                Comparable [] advance ()
+                {
+                    while (in.hasNext ()) {
+                        Comparable [] tup = in.next ();
+                        if (! drop.contains (new KeyType (tup))) return tup;
+                    } // while
+                    return null;
+                } // advance
+            };
+        } // iterator
+
+        public String toString ()
+        {
+            return left + ".minus (" + right + ")";
+        } // toString
+    } // Minus inner class
+
+    /***************************************************************************
+     * This inner class passes on the tuples of its child in sorted order.  The
+     * child is consumed, and the runs sorted and spilled (see ExternalSort),
+     * when the first tuple is requested.  The run files are deleted once the
+     * tuples are read to the end (or when the JVM exits, if they never are).
+     */
+    static class OrderBy extends QueryPlan
+    {
+        final QueryPlan   child;
+        final String      columns;
+        final boolean []  descending;
+        final int []      sortCols;
+
+        OrderBy (QueryPlan _child, String _columns, boolean [] _descending)
+        {
+            super (_child.schema);
+            child      = _child;
+            columns    = _columns;
+            descending = _descending;
+            sortCols   = _child.schema.match (_columns.trim ().split ("\\s+"));
+        } // constructor
+
+        public Iterator <Comparable []> iterator ()
+        {
+            final ExternalSort sorter = new ExternalSort (schema, sortCols, descending, Table.getMemoryBudget ());
+            return new Pipe () {
+                private Iterator <Comparable []> sorted = null;
+
+                Comparable [] advance ()
+                {
+                    if (sorted == null) sorted = sorter.sort (child.iterator ());
+                    return sorted.hasNext () ? sorted.next () : null;
+                } // advance
+            };
+        } // iterator
+
+        public String toString ()
+        {
+            return child + ".orderBy (" + columns + ")";
+        } // toString
+    } // OrderBy inner class
+
+    /***************************************************************************
+     * Split a condition into its "&"-ed parts.  A condition containing "|" is a
+     * single part, since "&" binds tighter than "|".
+     * @param condition  the selection condition
+     * @return  the conjuncts
+     */
+    static List <String> conjuncts (String condition)
+    {
+        List <String> parts = new ArrayList <> ();
+        String [] token = condition.trim ().split ("\\s+");
+        if (Arrays.asList (token).contains ("|")) {
+            parts.add (condition.trim ());
+            return parts;
+        } // if
+        StringBuilder sb = new StringBuilder ();
+        for (String t : token) {
+            if (t.equals ("&")) {
+                parts.add (sb.toString ());
+                sb.setLength (0);
+            } else {
+                sb.append ((sb.length () > 0) ? " " + t : t);
+            } // if
+        } // for
+        parts.add (sb.toString ());
+        return parts;
+    } // conjuncts
+
+    /***************************************************************************
+     * Build the schema of a projection.
+     * @param in          the schema of the input
+     * @param pAttribute  the projected attributes
+     * @return  the schema of the output
+     */
+    private static Table projectSchema (Table in, String [] pAttribute)
+    {
+        int []    colPos = in.match (pAttribute);
+        Class []  dom    = new Class [colPos.length];
+        for (int j = 0; j < colPos.length; j++) dom [j] = in.domains () [colPos [j]];
+        String [] key    = Arrays.asList (pAttribute).containsAll (Arrays.asList (in.keys ())) ? in.keys () : pAttribute;
+        return new Table (in.getName (), pAttribute, dom, key);
+    } // projectSchema
+
+    /***************************************************************************
+     * Build the schema of a join: the lhs attributes followed by the rhs ones
+     * prefixed with the rhs name, keyed on the lhs key.
+     * @param in1  the schema of the lhs input
+     * @param in2  the schema of the rhs input
+     * @return  the schema of the output
+     */
+    private static Table joinSchema (Table in1, Table in2)
+    {
+        String [] a1 = in1.attributes (), a2 = in2.attributes ();
+        String [] attr = Arrays.copyOf (a1, a1.length + a2.length);
+        Class []  dom  = Arrays.copyOf (in1.domains (), a1.length + a2.length);
+        for (int j = 0; j < a2.length; j++) {
+            attr [a1.length + j] = in2.getName () + "_" + a2 [j];
+            dom [a1.length + j]  = in2.domains () [j];
+        } // for
+        return new Table (in1.getName (), attr, dom, in1.keys ());
+    } // joinSchema
+
+} // QueryPlan class
@@ -0,0 +1,415 @@
+/*******************************************************************************
+ * @file  RoaringBitmap.java
+ */
+
+import java.util.Arrays;
+
+import static java.lang.System.out;
+
+/*******************************************************************************
+ * This class provides compressed bitmaps over non-negative integers (row
+ * numbers), organized as in Roaring bitmaps: the values are grouped by their
+ * high 16 bits, and each group is stored in a container that is either a sorted
+ * array of the low 16 bits (sparse, at most ARRAY_MAX values) or a bitmap of
+ * 1024 64-bit words (dense).  AND, OR and AND NOT work container by container,
+ * a word at a time for dense containers.  Bitmaps are immutable once combined:
+ * the operations return new bitmaps.
+ */
+public class RoaringBitmap
+{
+    /** Maximum number of values in an array container; denser groups use a bitmap.
+     */
+    private static final int ARRAY_MAX = 4096;
+
+    /** Number of 64-bit words in a bitmap container (2^16 bits).
+     */
+    private static final int WORDS = 1024;
+
+    /** The high 16 bits of the groups, in ascending order.
+     */
+    private char [] keys = new char [4];
+
+    /** The containers of the groups, parallel to keys.
+     */
+    private Container [] containers = new Container [4];
+
+    /** The number of groups (non-empty containers).
+     */
+    private int nGroups = 0;
+
+    /***************************************************************************
+     * This inner class holds the low 16 bits of the values in one group, either
+     * as a sorted array or as a bitmap.
+     */
+    private static final class Container
+    {
+        char [] array;          // the sorted values (if sparse), else null
+        long [] words;          // the bitmap (if dense), else null
+        int     card;           // the number of values
+
+        /** Add a value (low 16 bits) to the container.
+         */
+        Container add (char v)
+        {
+            if (words != null) {
+                if ((words [v >>> 6] & (1L << v)) == 0) { words [v >>> 6] |= 1L << v; card++; }
+                return this;
+            } // if
+            int i = (card > 0 && array [card - 1] < v) ? -card - 1 : Arrays.binarySearch (array, 0, card, v);
+            if (i >= 0) return this;
+            if (card == ARRAY_MAX) return toBitmap ().add (v);
+            i = -i - 1;
+            if (card == array.length) array = Arrays.copyOf (array, Math.min (ARRAY_MAX, 2 * card));
+            System.arraycopy (array, i, array, i + 1, card - i);
+            array [i] = v;
+            card++;
+            return this;
+        } // add
+
+        /** Determine whether the container holds a value.
+         */
+        boolean contains (char v)
+        {
+            return (words != null) ? (words [v >>> 6] & (1L << v)) != 0
+                                   : Arrays.binarySearch (array, 0, card, v) >= 0;
+        } // contains
+
+        /** Return an equivalent bitmap container.
+         */
+        Container toBitmap ()
+        {
+            if (words != null) return this;
+            Container c = new Container ();
+            c.words = new long [WORDS];
+            for (int i = 0; i < card; i++) c.words [array [i] >>> 6] |= 1L << array [i];
+            c.card = card;
+            return c;
+        } // toBitmap
+    } // Container inner class
+
+    /***************************************************************************
+     * Construct an empty bitmap.
+     */
+    public RoaringBitmap ()
+    {
+    } // constructor
+
+    /***************************************************************************
+     * Return a bitmap holding every value in [0, n).
+     * @param n  the number of values
+     * @return  the bitmap of the range
+     */
+    public static RoaringBitmap range (int n)
+    {
+        RoaringBitmap bm = new RoaringBitmap ();
+        for (int hi = 0; hi << 16 < n; hi++) {
+            int m = Math.min (n - (hi << 16), 1 << 16);          // values in this group
+            Container c = new Container ();
+            c.words = new long [WORDS];
+            Arrays.fill (c.words, 0, m >>> 6, -1L);
+            if ((m & 63) != 0) c.words [m >>> 6] = (1L << m) - 1;
+            c.card = m;
+            bm.append ((char) hi, compact (c));
+        } // for
+        return bm;
+    } // range
+
+    /***************************************************************************
+     * Add a value to the bitmap.  Adding values in ascending order (as rows are
+     * appended to a table) takes constant time.
+     * @param x  the value to add (non-negative)
+     */
+    public void add (int x)
+    {
+        char hi = (char) (x >>> 16);
+        int  i  = (nGroups > 0 && keys [nGroups - 1] == hi) ? nGroups - 1 : Arrays.binarySearch (keys, 0, nGroups, hi);
+        if (i < 0) {
+            Container c = new Container ();
+            c.array = new char [4];
+            i = -i - 1;
+            insertGroup (i, hi, c);
+        } // if
+        containers [i] = containers [i].add ((char) x);
+    } // add
+
+    /***************************************************************************
+     * Determine whether the bitmap holds a value.
+     * @param x  the value to look for
+     * @return  whether x is in the bitmap
+     */
+    public boolean contains (int x)
+    {
+        int i = Arrays.binarySearch (keys, 0, nGroups, (char) (x >>> 16));
+        return i >= 0 && containers [i].contains ((char) x);
+    } // contains
+
+    /***************************************************************************
+     * Return the number of values in the bitmap.
+     * @return  the cardinality
+     */
+    public int cardinality ()
+    {
+        int n = 0;
+        for (int i = 0; i < nGroups; i++) n += containers [i].card;
+        return n;
+    } // cardinality
+
+    /***************************************************************************
+     * Return the values in the bitmap in ascending order.
+     * @return  the array of values
+     */
+    public int [] toArray ()
+    {
+        int [] vals = new int [cardinality ()];
+        int n = 0;
+        for (int i = 0; i < nGroups; i++) {
+            int base = keys [i] << 16;
+            Container c = containers [i];
+            if (c.words == null) {
+                for (int j = 0; j < c.card; j++) vals [n++] = base | c.array [j];
+            } else {
+                for (int w = 0; w < WORDS; w++) {
+                    for (long word = c.words [w]; word != 0; word &= word - 1) {
+                        vals [n++] = base | (w << 6) | Long.numberOfTrailingZeros (word);
+                    } // for
+                } // for
+            } // if
+        } // for
+        return vals;
+    } // toArray
+
+    /***************************************************************************
+     * Intersect this bitmap with another.
+     * @param other  the other bitmap
+     * @return  a new bitmap holding the values in both (this AND other)
+     */
+    public RoaringBitmap and (RoaringBitmap other)
+    {
+        RoaringBitmap bm = new RoaringBitmap ();
+        for (int i = 0, j = 0; i < nGroups && j < other.nGroups; ) {
+            if (keys [i] < other.keys [j]) i++;
+            else if (keys [i] > other.keys [j]) j++;
+            else {
+                Container c = and (containers [i], other.containers [j]);
+                if (c.card > 0) bm.append (keys [i], c);
+                i++; j++;
+            } // if
+        } // for
+        return bm;
+    } // and
+
+    /***************************************************************************
+     * Unite this bitmap with another.
+     * @param other  the other bitmap
+     * @return  a new bitmap holding the values in either (this OR other)
+     */
+    public RoaringBitmap or (RoaringBitmap other)
+    {
+        RoaringBitmap bm = new RoaringBitmap ();
+        int i = 0, j = 0;
+        while (i < nGroups || j < other.nGroups) {
+            if (j == other.nGroups || i < nGroups && keys [i] < other.keys [j]) {
+                bm.append (keys [i], copy (containers [i++]));
+            } else if (i == nGroups || keys [i] > other.keys [j]) {
+                bm.append (other.keys [j], copy (other.containers [j++]));
+            } else {
+                bm.append (keys [i], or (containers [i++], other.containers [j++]));
+            } // if
+        } // while
+        return bm;
+    } // or
+
+    /***************************************************************************
+     * Subtract another bitmap from this bitmap.
+     * @param other  the other bitmap
+     * @return  a new bitmap holding the values in this but not in other
+     *          (this AND NOT other)
+     */
+    public RoaringBitmap andNot (RoaringBitmap other)
+    {
+        RoaringBitmap bm = new RoaringBitmap ();
+        for (int i = 0, j = 0; i < nGroups; i++) {
+            while (j < other.nGroups && other.keys [j] < keys [i]) j++;
+            Container c = (j < other.nGroups && other.keys [j] == keys [i])
+                        ? andNot (containers [i], other.containers [j]) : copy (containers [i]);
+            if (c.card > 0) bm.append (keys [i], c);
+        } // for
+        return bm;
+    } // andNot
+
+    /***************************************************************************
+     * Complement this bitmap within the values [0, n).
+     * @param n  the size of the universe (e.g., the number of rows)
+     * @return  a new bitmap holding the values in [0, n) not in this bitmap
+     */
+    public RoaringBitmap not (int n)
+    {
+        return range (n).andNot (this);
+    } // not
+
+    /***************************************************************************
+     * Intersect two containers.
+     * @param a  the first container
+     * @param b  the second container
+     * @return  the container of the common values
+     */
+    private static Container and (Container a, Container b)
+    {
+        Container c = new Container ();
+        if (a.words != null && b.words != null) {                  // word-level AND
+            c.words = new long [WORDS];
+            for (int w = 0; w < WORDS; w++) c.card += Long.bitCount (c.words [w] = a.words [w] & b.words [w]);
+            return compact (c);
+        } // if
+        if (a.words != null) { Container t = a; a = b; b = t; }    // a is an array container
+        c.array = new char [a.card];
+        if (b.words != null) {
+            for (int i = 0; i < a.card; i++) if (b.contains (a.array [i])) c.array [c.card++] = a.array [i];
+        } else {
+            for (int i = 0, j = 0; i < a.card && j < b.card; ) {
+                if (a.array [i] < b.array [j]) i++;
+                else if (a.array [i] > b.array [j]) j++;
+                else { c.array [c.card++] = a.array [i++]; j++; }
+            } // for
+        } // if
+        return c;
+    } // and
+
+    /***************************************************************************
+     * Unite two containers.
+     * @param a  the first container
+     * @param b  the second container
+     * @return  the container of the values in either
+     */
+    private static Container or (Container a, Container b)
+    {
+        if (a.words == null && b.words == null && a.card + b.card <= ARRAY_MAX) {
+            Container c = new Container ();
+            c.array = new char [a.card + b.card];
+            int i = 0, j = 0;
+            while (i < a.card || j < b.card) {
+                if (j == b.card || i < a.card && a.array [i] < b.array [j]) c.array [c.card++] = a.array [i++];
+                else if (i == a.card || a.array [i] > b.array [j]) c.array [c.card++] = b.array [j++];
+                else { c.array [c.card++] = a.array [i++]; j++; }
+            } // while
+            return c;
+        } // if
+        Container c = new Container ();                          // word-level OR
+        c.words = new long [WORDS];
+        long [] aw = a.toBitmap ().words, bw = b.toBitmap ().words;
+        for (int w = 0; w < WORDS; w++) c.card += Long.bitCount (c.words [w] = aw [w] | bw [w]);
+        return compact (c);
+    } // or
+
+    /***************************************************************************
+     * Subtract one container from another.
+     * @param a  the container to subtract from
+     * @param b  the container to subtract
+     * @return  the container of the values in a but not in b
+     */
+    private static Container andNot (Container a, Container b)
+    {
+        Container c = new Container ();
+        if (a.words != null) {                                     // word-level AND NOT
+            c.words = new long [WORDS];
+            long [] bw = b.toBitmap ().words;
+            for (int w = 0; w < WORDS; w++) c.card += Long.bitCount (c.words [w] = a.words [w] & ~bw [w]);
+            return compact (c);
+        } // if
+        c.array = new char [a.card];
+        for (int i = 0; i < a.card; i++) if (! b.contains (a.array [i])) c.array [c.card++] = a.array [i];
+        return c;
+    } // andNot
+
+    /***************************************************************************
+     * Convert a bitmap container that has become sparse to an array container.
+     * @param c  the container
+     * @return  the container in its most compact form
+     */
+    private static Container compact (Container c)
+    {
+        if (c.words == null || c.card > ARRAY_MAX) return c;
+        Container a = new Container ();
+        a.array = new char [c.card];
+        for (int w = 0; w < WORDS; w++) {
+            for (long word = c.words [w]; word != 0; word &= word - 1) {
+                a.array [a.card++] = (char) ((w << 6) | Long.numberOfTrailingZeros (word));
+            } // for
+        } // for
+        return a;
+    } // compact
+
+    /***************************************************************************
+     * Copy a container, so that bitmaps returned by the operations share no
+     * mutable state with their operands.
+     * @param c  the container
+     * @return  the copy
+     */
+    private static Container copy (Container c)
+    {
+        Container d = new Container ();
+        d.array = (c.array == null) ? null : Arrays.copyOf (c.array, c.card);
+        d.words = (c.words == null) ? null : c.words.clone ();
+        d.card  = c.card;
+        return d;
+    } // copy
+
+    /***************************************************************************
+     * Append a group whose high bits are larger than those of every group so far.
+     * @param hi  the high 16 bits of the group
+     * @param c   the container of the group
+     */
+    private void append (char hi, Container c)
+    {
+        insertGroup (nGroups, hi, c);
+    } // append
+
+    /***************************************************************************
+     * Insert a group at the given position of the keys and containers arrays.
+     * @param i   the position
+     * @param hi  the high 16 bits of the group
+     * @param c   the container of the group
+     */
+    private void insertGroup (int i, char hi, Container c)
+    {
+        if (nGroups == keys.length) {
+            keys       = Arrays.copyOf (keys, 2 * nGroups);
+            containers = Arrays.copyOf (containers, 2 * nGroups);
+        } // if
+        System.arraycopy (keys, i, keys, i + 1, nGroups - i);
+        System.arraycopy (containers, i, containers, i + 1, nGroups - i);
+        keys [i]       = hi;
+        containers [i] = c;
+        nGroups++;
+    } // insertGroup
+
+    /***************************************************************************
+     * Convert the bitmap to a string.
+     * @return  the string representation of the bitmap
+     */
+    public String toString ()
+    {
+        int dense = 0;
+        for (int i = 0; i < nGroups; i++) if (containers [i].words != null) dense++;
+        return "RoaringBitmap (cardinality = " + cardinality () + ", containers = " + nGroups
+             + ", dense = " + dense + " )";
+    } // toString
+
+    /***************************************************************************
+     * The main method is used for testing purposes only.
+     * @param args  the command-line arguments
+     */
+    public static void main (String [] args)
+    {
+        RoaringBitmap even = new RoaringBitmap (), sparse = new RoaringBitmap ();
+        for (int i = 0; i < 200000; i += 2) even.add (i);
+        for (int i = 0; i < 200000; i += 1000) sparse.add (i);
+        out.println ("even          = " + even);
+        out.println ("sparse        = " + sparse);
+        out.println ("even & sparse = " + even.and (sparse));
+        out.println ("even | sparse = " + even.or (sparse));
+        out.println ("sparse - even = " + sparse.andNot (even));
+        out.println ("not even      = " + even.not (200000));
+    } // main
+
+} // RoaringBitmap class
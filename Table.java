@@ -6,11 +6,18 @@
 
 import java.io.Serializable;
 import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 
 import static java.lang.Boolean.*;
 import static java.lang.System.out;
 
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.BiFunction;
+import java.util.function.Function;
 
 //import org.apache.commons.lang.ArrayUtils;
 
@@ -32,6 +39,56 @@ public class Table
      */
     private static int count = 0;
 
+    /** Minimum number of input tuples for an operator to run in parallel.
+     */
+    private static final int PARALLEL_THRESHOLD = 10000;
+
+    /** Degree of parallelism (number of worker threads) for parallel operators.
+     */
+    private static int parallelism = Runtime.getRuntime ().availableProcessors ();
+
+    /** Whether parallel joins must produce tuples in the same order as a serial join.
+     */
+    private static boolean orderedJoin = false;
+
+    /** Memory budget (in bytes of packed tuples) for the build side of a hash join;
+     *  larger build sides are spilled to disk by the Grace hash join.
+     */
+    private static long memoryBudget = Runtime.getRuntime ().maxMemory () / 4;
+
+    /** Target false-positive rate of the Bloom filters built by hash joins.
+     */
+    private static final double BLOOM_FPP = 0.01;
+
+    /** The Bloom filter built by the most recent hash join (for its statistics).
+     */
+    private static BloomFilter lastBloom = null;
+
+    /** The name of the algorithm used by the most recent join (e.g., "indexJoin").
+     */
+    private static String lastJoin = null;
+
+    /** Estimated selectivity above which select scans the table instead of probing
+     *  a secondary index, since fetching that many scattered rows is no cheaper.
+     */
+    private static final double INDEX_SELECTIVITY = 0.25;
+
+    /** Maximum number of compiled selection predicates cached per table.
+     */
+    private static final int PLAN_CACHE = 64;
+
+    /** Number of partitions a Grace hash join splits its inputs into per pass.
+     */
+    private static final int GRACE_PARTITIONS = 16;
+
+    /** Maximum number of times a Grace hash join re-partitions a partition.
+     */
+    private static final int GRACE_MAX_DEPTH = 4;
+
+    /** Default maximum number of (UTF-8) bytes of a packed string.
+     */
+    private static final int STRING_SIZE = 60;
+
     /** Table name.
      */
     private final String name;
@@ -59,6 +116,32 @@ public class Table
      */
     private final Map <KeyType, Comparable []> index;
 
+    /** Secondary indexes on single columns (BpTree, LinHash or TreeMap), mapping
+     *  each value of the column to the row numbers (positions in tuples) of the
+     *  tuples having it.
+     */
+    private final Map <Integer, Map <KeyType, List <Integer>>> colIndex = new HashMap <> ();
+
+    /** Bitmap indexes on single (low-cardinality) columns, mapping each value of
+     *  the column to the bitmap of the row numbers of the tuples having it.
+     */
+    private final Map <Integer, Map <Comparable, RoaringBitmap>> bitmapIndex = new HashMap <> ();
+
+    /** Statistics of each column (see analyze), or null if not yet analyzed.
+     */
+    private ColumnStats [] stats = null;
+
+    /** Compiled (and term-ordered) selection predicates by condition, so that
+     *  repeated selections reuse the pass rates observed by earlier ones.
+     */
+    private final Map <String, Predicate> plans = new HashMap <> ();
+
+    /** Maximum number of (UTF-8) bytes of a string packed into a record (see
+     *  pack): a string field takes a 4-byte length followed by this many bytes.
+     *  Spill files size it to the longest string they hold.
+     */
+    private int stringSize = STRING_SIZE;
+
     /***************************************************************************
      * Construct an empty table from the meta-data specifications.
      * @param _name       the name of the relation
@@ -77,6 +160,25 @@ public class Table
         index     = new TreeMap <> ();                  // also try BPTreeMap, LinHash or ExtHash
     } // Table
 
+    /***************************************************************************
+     * Construct a table over an existing list of tuples (e.g., a view).
+     * @param _name       the name of the relation
+     * @param _attribute  the string containing attributes names
+     * @param _domain     the string containing attribute domains (data types)
+     * @param _key        the primary key
+     * @param _tuples     the list of tuples
+     */
+    private Table (String _name, String [] _attribute, Class [] _domain, String [] _key,
+                   List <Comparable []> _tuples)
+    {
+        name      = _name;
+        attribute = _attribute;
+        domain    = _domain;
+        key       = _key;
+        tuples    = _tuples;
+        index     = new TreeMap <> ();
+    } // Table
+
     /***************************************************************************
      * Construct an empty table from the raw string specifications.
      * @param name        the name of the relation
@@ -108,6 +210,19 @@ public class Table
      * @return  the table consisting of projected tuples
      */
     public Table project (String attributeList)
+    {
+        return project (attributeList, parallelism);
+    } // project
+
+    /***************************************************************************
+     * Project the tuples onto the given attributes using up to dop worker threads
+     * (see scan).
+     * #usage movie.project ("title year studioNo", 8)
+     * @param attributeList  the attributes to project onto
+     * @param dop            the degree of parallelism for this query
+     * @return  the table consisting of projected tuples
+     */
+    public Table project (String attributeList, int dop)
     {
         out.println ("RA> " + name + ".project (" + attributeList + ")");
         
@@ -133,13 +248,90 @@ public class Table
         
         Table     result     = new Table (name + count++, pAttribute, colDomain, newKey);
          
-        for (Comparable [] tup : tuples) { // for each tuple in tuples[], do:
-            result.tuples.add (extractTup (tup, colPos));
-        } // for
+        result.tuples.addAll (scan (dop, tup -> extractTup (tup, colPos)));
 
         return result;
     } // project
 
+    /***************************************************************************
+     * Create a projection view: a table whose tuples are this table's tuples read
+     * through a column mapping.  Creating the view takes O(1) and stores nothing;
+     * a projected tuple is only built when it is read, so a view that is only
+     * filtered, joined or printed never holds a copy of the data.  Until it is
+     * modified, the view sees tuples later inserted into this table and has no
+     * index; the first insert into the view copies its tuples into storage of its
+     * own (see ownStorage).  Use materialize to obtain an ordinary table.
+     * #usage movie.projectView ("title year")
+     * @param attributeList  the attributes to project onto
+     * @return  the view of the projected tuples
+     */
+    public Table projectView (String attributeList)
+    {
+        return projectView (attributeList, false);
+    } // projectView
+
+    /***************************************************************************
+     * Create a projection view, optionally with duplicates eliminated (DISTINCT).
+     * A distinct view hashes the projected values once to find the first row of
+     * each distinct value, and keeps only those row numbers.
+     * #usage movie.projectView ("genre studioName", true)
+     * @param attributeList  the attributes to project onto
+     * @param distinct       whether to eliminate duplicate projected tuples
+     * @return  the view of the projected tuples
+     */
+    public Table projectView (String attributeList, boolean distinct)
+    {
+        out.println ("RA> " + name + ".projectView (" + attributeList + (distinct ? ", distinct)" : ")"));
+
+        String [] pAttribute = attributeList.split (" ");
+        int []    colPos     = match (pAttribute);
+        String [] newKey     = Arrays.asList (pAttribute).containsAll (Arrays.asList (key)) ? key : pAttribute;
+
+        int [] rows = null;                                     // null: every row of this table
+        if (distinct) {
+            Set <KeyType> seen = new HashSet <> ();
+            int n = 0;
+            rows = new int [16];
+            for (int i = 0; i < tuples.size (); i++) {
+                if (! seen.add (new KeyType (extractTup (tuples.get (i), colPos)))) continue;
+                if (n == rows.length) rows = Arrays.copyOf (rows, 2 * n);
+                rows [n++] = i;
+            } // for
+            rows = Arrays.copyOf (rows, n);
+        } // if
+
+        return new Table (name + count++, pAttribute, extractDom (domain, colPos), newKey,
+                          new ViewList (tuples, rows, colPos, false));
+    } // projectView
+
+    /***************************************************************************
+     * Materialize this table: copy its tuples into an ordinary (stored and
+     * indexed) table.  Tables that are not views (projections or selections) are
+     * returned as they are.
+     * #usage movie.projectView ("title year").materialize ()
+     * @return  a table storing its own tuples
+     */
+    public Table materialize ()
+    {
+        if (! isView ()) return this;
+
+        Table  result  = new Table (name + count++, attribute, domain, key);
+        int [] keyCols = match (key);
+        for (Comparable [] tup : tuples) result.append (tup, keyCols);
+        return result;
+    } // materialize
+
+    /***************************************************************************
+     * Start a lazy query plan that scans this table.  Operators added to the plan
+     * run in one pipelined pass when it is executed (see QueryPlan).
+     * #usage movie.query ().select ("year > 1970").project ("title year").execute ()
+     * @return  the scan operator over this table
+     */
+    public QueryPlan query ()
+    {
+        return QueryPlan.scan (this);
+    } // query
+
     /***************************************************************************
      * Select the tuples satisfying the given condition.
      * A condition is written as infix expression consists of 
@@ -150,24 +342,167 @@ public class Table
      * @return  the table consisting of tuples satisfying the condition
      */
     public Table select (String condition)
+    {
+        return select (condition, parallelism);
+    } // select
+
+    /***************************************************************************
+     * Select the tuples satisfying the given condition using up to dop worker
+     * threads for a full scan (see scan).  Index lookups stay serial.
+     * #usage movie.select ("1979 < year & year < 1990", 8)
+     * @param condition  the check condition for tuples
+     * @param dop        the degree of parallelism for this query
+     * @return  the table consisting of tuples satisfying the condition
+     */
+    public Table select (String condition, int dop)
     {
         out.println ("RA> " + name + ".select (" + condition + ")");
 
-        //String [] postfix = { "title", "Star_Wars", "==" };      // FIX: delete after impl
-        String [] postfix = infix2postfix (condition);           // FIX: uncomment after impl
-        Table     result  = new Table (name + count++, attribute, domain, key);
+        final Predicate pred = plan (condition);               // parse once, not per tuple
 
-        for (Comparable[] tup : tuples) { // for each tuple in tuples[], do:
-            if (result.evalTup (postfix, tup)){
-            	result.tuples.add (tup);
-            }
-        } // for
+        KeyType pKey = pointKey (pred);
+        if (pKey != null) {                                     // the whole key is pinned: look it up
+            Table result = new Table (name + count++, attribute, domain, key);
+            Comparable [] tup = index.get (pKey);
+            if (tup != null && pred.eval (tup)) result.tuples.add (tup);
+            return result;
+        } // if
 
-        return result;
+        boolean probe   = stats == null || selectivity (pred) <= INDEX_SELECTIVITY;
+        RoaringBitmap bm = probe ? bitmapRows (pred) : null;
+        int [] rows = (bm != null) ? bm.toArray () : probe ? rangeRows (pred) : null;
+        if (rows != null) {                                     // only check the tuples the indexes let through
+            int n = 0;
+            for (int row : rows) if (pred.eval (tuples.get (row))) rows [n++] = row;
+            return selection (Arrays.copyOf (rows, n));
+        } // if
+
+        return selection (filterRows (dop, pred));
     } // select
 
+    /***************************************************************************
+     * Return a selection view of this table: a table holding a selection vector
+     * (the ascending row numbers of the selected tuples) into the base list of
+     * tuples instead of copies of the tuple references.  Selecting from a view
+     * maps the rows back to its base, so chains of selections share one base
+     * and tuples are only read when a consumer needs their values.  The view is
+     * an ordinary table to its users: inserting into it first copies its tuples
+     * into storage of its own (see ownStorage).
+     * @param sel  the selected positions in this table's tuples, ascending
+     * @return  the view of the selected tuples
+     */
+    private Table selection (int [] sel)
+    {
+        ViewList list;
+        if (isView ()) {
+            ViewList v = (ViewList) tuples;
+            if (v.rows != null) for (int k = 0; k < sel.length; k++) sel [k] = v.rows [sel [k]];
+            list = new ViewList (v.base, sel, v.colPos, v.unique);
+        } else {
+            list = new ViewList (tuples, sel, null, index.size () == tuples.size ());
+        } // if
+        return new Table (name + count++, attribute, domain, key, list);
+    } // selection
+
+    /***************************************************************************
+     * Apply a function to every tuple, keeping its non-null results in tuple
+     * order (see chunks).
+     * @param dop  the degree of parallelism (1 for a serial scan)
+     * @param f    the function mapping a tuple to its output (or null to drop it)
+     * @return  the outputs in tuple order
+     */
+    private List <Comparable []> scan (int dop, final Function <Comparable [], Comparable []> f)
+    {
+        List <Comparable []> res = new ArrayList <> ();
+        for (List <Comparable []> part : chunks (dop, (in, lo) -> {
+                List <Comparable []> out = new ArrayList <> ();
+                for (Comparable [] tup : in) {
+                    Comparable [] r = f.apply (tup);
+                    if (r != null) out.add (r);
+                } // for
+                return out;
+            })) res.addAll (part);
+        return res;
+    } // scan
+
+    /***************************************************************************
+     * Return the positions of the tuples satisfying a predicate (see chunks).
+     * @param dop   the degree of parallelism (1 for a serial scan)
+     * @param pred  the compiled selection predicate
+     * @return  the positions of the satisfying tuples in ascending order
+     */
+    private int [] filterRows (int dop, final Predicate pred)
+    {
+        List <int []> parts = chunks (dop, (in, lo) -> {
+            int n = 0, row = lo;
+            int [] sel = new int [16];
+            for (Comparable [] tup : in) {
+                if (pred.eval (tup)) {
+                    if (n == sel.length) sel = Arrays.copyOf (sel, 2 * n);
+                    sel [n++] = row;
+                } // if
+                row++;
+            } // for
+            return Arrays.copyOf (sel, n);
+        });
+
+        int n = 0;
+        for (int [] part : parts) n += part.length;
+        int [] sel = new int [n];
+        n = 0;
+        for (int [] part : parts) {
+            System.arraycopy (part, 0, sel, n, part.length);
+            n += part.length;
+        } // for
+        return sel;
+    } // filterRows
+
+    /***************************************************************************
+     * Process the tuples in contiguous chunks and return the chunks' results in
+     * tuple order.  Tables with at least PARALLEL_THRESHOLD tuples are split into
+     * 4 * dop chunks (read with one sequential read each from a FileList) that
+     * are processed on a ForkJoinPool; smaller tables form a single chunk.
+     * @param dop   the degree of parallelism (1 for a serial scan)
+     * @param work  the function mapping a chunk's tuples and the position of its
+     *              first tuple to the chunk's result
+     * @return  the results of the chunks in order
+     */
+    private <T> List <T> chunks (int dop, final BiFunction <List <Comparable []>, Integer, T> work)
+    {
+        int n = tuples.size ();
+        if (dop <= 1 || n < PARALLEL_THRESHOLD) return Collections.singletonList (work.apply (tuples, 0));
+
+        int nChunks = 4 * dop, chunk = (n + nChunks - 1) / nChunks;
+        List <Callable <T>> tasks = new ArrayList <> ();
+        for (int from = 0; from < n; from += chunk) {
+            final int lo = from, hi = Math.min (n, from + chunk);
+            tasks.add (() -> work.apply ((tuples instanceof FileList) ? ((FileList) tuples).getRange (lo, hi)
+                                                                      : tuples.subList (lo, hi), lo));
+        } // for
+
+        List <T> res = new ArrayList <> ();
+        ForkJoinPool pool = new ForkJoinPool (dop);
+        try {
+            for (Future <T> fut : pool.invokeAll (tasks)) res.add (fut.get ());
+        } catch (ExecutionException ex) {
+            if (ex.getCause () instanceof RuntimeException) throw (RuntimeException) ex.getCause ();   // e.g., a failed read
+            throw new RuntimeException ("Table.chunks: " + ex, ex);
+        } catch (Exception ex) {
+            throw new RuntimeException ("Table.chunks: " + ex, ex);
+        } finally {
+            pool.shutdown ();
+        } // try
+        return res;
+    } // chunks
+
     /***************************************************************************
      * Union this table and table2.  Check that the two tables are compatible.
+     * Duplicates are eliminated by value with a hash set of whole tuples, or, when
+     * both tables have the same primary key and complete indexes, by probing this
+     * table's index with the keys of table2's tuples and comparing the tuple found
+     * by value (see indexHolds), so the union takes O(n + m).
+     * Two selections of the same table are united by merging their selection
+     * vectors, without reading any tuple.
      * #usage movie.union (show)
      * @param table2  the rhs table in the union operation
      * @return  the table representing the union (this U table2)
@@ -180,23 +515,19 @@ public class Table
         Table result = new Table (name + count++, attribute, domain, key);
           //Check if tables are the same	
           if(this.compatible(table2)){
-        	  //Add all the tuples from this table to result table
-        	  for(Comparable [] tup : tuples){
-        		  result.insert(tup);
-        	  }
-        	  //Check to see if there are matching tuples, if there are
-        	  //then don't add, if there is no match then add the tuple.
-        	  for(int i = 0; i < table2.tuples.size(); i++){
-        		  boolean check = false;
-        		  for(int k = 0; k < tuples.size(); k++){
-        			  if(table2.tuples.get(i).equals(tuples.get(k))){
-        				  check = true;
-        			  }
-        		  }
-        		  if(!check){
-        			  result.insert(table2.tuples.get(i));
-        		  }
-        	  }
+        	  int [] keyCols = match (key);
+        	  if (sameRows (table2)) {          // selections of one table: merge the row numbers
+        		  return mergeRows (table2, true, true, true);
+        	  } else if (sameKey (table2)) {    // tuples are distinct by key: probe this table's index
+        		  for (Comparable [] tup : tuples) result.append (tup, keyCols);
+        		  for (Comparable [] tup : table2.tuples) {
+        			  if (! indexHolds (tup, keyCols)) result.append (tup, keyCols);
+        		  } // for
+        	  } else {                          // add each distinct tuple value once
+        		  Set <KeyType> seen = new HashSet <> ();
+        		  for (Comparable [] tup : tuples) if (seen.add (new KeyType (tup))) result.append (tup, keyCols);
+        		  for (Comparable [] tup : table2.tuples) if (seen.add (new KeyType (tup))) result.append (tup, keyCols);
+        	  } // if
           }
           //If tables are not compatible.
           else{
@@ -206,9 +537,32 @@ public class Table
         return result;
     } // union
 
+    /***************************************************************************
+     * Union this table and table2 keeping all tuples of both, duplicates included
+     * (bag union), so no tuple is hashed or compared.
+     * #usage movie.unionAll (show)
+     * @param table2  the rhs table in the union operation
+     * @return  the table representing the bag union (this U+ table2)
+     */
+    public Table unionAll (Table table2)
+    {
+        out.println ("RA> " + name + ".unionAll (" + table2.name + ")");
+
+        Table result = new Table (name + count++, attribute, domain, key);
+        if (! compatible (table2)) {
+            out.println ("Tables are not compatible");
+            return result;
+        } // if
+
+        int [] keyCols = match (key);
+        for (Comparable [] tup : tuples) result.append (tup, keyCols);
+        for (Comparable [] tup : table2.tuples) result.append (tup, keyCols);
+        return result;
+    } // unionAll
+
     /***************************************************************************
      * Take the difference of this table and table2.  Check that the two tables
-     * are compatible.
+     * are compatible.  Tuples are matched by value (see members), in O(n + m).
      * #usage movie.minus (show)
      * @param table2  the rhs table in the minus operation
      * @return  the table representing the difference (this - table2)
@@ -220,30 +574,205 @@ public class Table
       
       Table result = new Table (name + count++, attribute, domain, key);
       
-      boolean match = false;
-      // iterate through this table
-      for (int i=0; i < tuples.size(); i++) {
-        // iterate through table2
-        for (int j=0; j < table2.tuples.size(); j++) {
-          // if tuple in this table matches one in table2
-          if (tuples.get(i) == table2.tuples.get(j)) {
-            match = true;
-            break;
-          }
-        }
-        // if tuple in this table has no match in table2
-        if (!match) {
-          // add tuple to result table
-          result.insert(tuples.get(i));
-        }
-        else match = false;
-      }
-      
-      return result;
+      return members (table2, false, result);   // keep the tuples with no match in table2
     } // minus
 
     /***************************************************************************
-     * Join this table and table2.  If an attribute name appears in both tables,
+     * Intersect this table and table2: keep the tuples of this table that are
+     * also in table2.  Tuples are matched by value (see members), in O(n + m).
+     * #usage movie.intersect (cinema)
+     * @param table2  the rhs table in the intersect operation
+     * @return  the table representing the intersection (this & table2)
+     */
+    public Table intersect (Table table2)
+    {
+        out.println ("RA> " + name + ".intersect (" + table2.name + ")");
+
+        Table result = new Table (name + count++, attribute, domain, key);
+        return members (table2, true, result);
+    } // intersect
+
+    /***************************************************************************
+     * Add to result the tuples of this table that are (or are not) in table2.
+     * Two selections of the same table are compared by merging their selection
+     * vectors.  When both tables have the same primary key and complete indexes,
+     * a tuple's key is looked up in table2's index and the tuple found (the only
+     * candidate) is compared by value; otherwise its value is looked up in a hash
+     * set of table2's tuples.
+     * @param table2  the table to look tuples up in
+     * @param member  true to keep the tuples found in table2, false to keep the
+     *                tuples not found
+     * @param result  the table receiving the kept tuples (when not a view)
+     * @return  the table of kept tuples: result or a selection view
+     */
+    private Table members (Table table2, boolean member, Table result)
+    {
+        if (sameRows (table2)) return mergeRows (table2, ! member, member, false);
+
+        int [] keyCols = match (key);
+        if (sameKey (table2)) {
+            for (Comparable [] tup : tuples) {
+                if (table2.indexHolds (tup, keyCols) == member) result.append (tup, keyCols);
+            } // for
+            return result;
+        } // if
+
+        Set <KeyType> values = new HashSet <> ();
+        for (Comparable [] tup : table2.tuples) values.add (new KeyType (tup));
+        for (Comparable [] tup : tuples) {
+            if (values.contains (new KeyType (tup)) == member) result.append (tup, keyCols);
+        } // for
+        return result;
+    } // members
+
+    /***************************************************************************
+     * Determine whether this table and table2 are selections of the same base
+     * tuples (with all columns) whose rows are distinct by key, so that equal
+     * tuples have equal row numbers and set operations can work on the selection
+     * vectors alone.
+     * @param table2  the other table
+     * @return  whether the selection vectors can stand in for the tuples
+     */
+    private boolean sameRows (Table table2)
+    {
+        if (! isView () || ! table2.isView ()) return false;
+        ViewList v1 = (ViewList) tuples, v2 = (ViewList) table2.tuples;
+        return v1.base == v2.base && v1.colPos == null && v2.colPos == null && v1.rows != null && v2.rows != null
+               && v1.unique && v2.unique;
+    } // sameRows
+
+    /***************************************************************************
+     * Combine the selection vectors of this table and table2 (see sameRows) with
+     * a merge, keeping the rows found only in this table, in both or only in
+     * table2 as requested.
+     * @param table2    the other selection of the same base
+     * @param keepThis  whether to keep the rows only in this table
+     * @param keepBoth  whether to keep the rows in both tables
+     * @param keepThat  whether to keep the rows only in table2
+     * @return  the selection view of the kept rows
+     */
+    private Table mergeRows (Table table2, boolean keepThis, boolean keepBoth, boolean keepThat)
+    {
+        ViewList v1 = (ViewList) tuples, v2 = (ViewList) table2.tuples;
+        int [] a = v1.rows, b = v2.rows;
+        int [] rows = new int [a.length + b.length];
+        int i = 0, j = 0, n = 0;
+        while (i < a.length || j < b.length) {
+            if (j == b.length || i < a.length && a [i] < b [j]) {
+                if (keepThis) rows [n++] = a [i];
+                i++;
+            } else if (i == a.length || a [i] > b [j]) {
+                if (keepThat) rows [n++] = b [j];
+                j++;
+            } else {
+                if (keepBoth) rows [n++] = a [i];
+                i++; j++;
+            } // if
+        } // while
+        return new Table (name + count++, attribute, domain, key,
+                          new ViewList (v1.base, Arrays.copyOf (rows, n), null, true));
+    } // mergeRows
+
+    /***************************************************************************
+     * Group the tuples by the values of the grouping columns and compute
+     * aggregates per group.  An aggregate is written "fn(column)", where fn is
+     * count, sum, min, max or avg, or "count(*)" to count the tuples, and names
+     * its output column.  The groups are kept in an open-addressing hash table
+     * with primitive accumulators (see HashAggregate), in one pass over the
+     * tuples.  With no grouping columns the whole table forms one group (none
+     * when the table is empty).
+     * #usage movie.groupBy ("studioName", "count(*) avg(length) max(year)")
+     * @param groupCols   the grouping attributes (may be empty)
+     * @param aggregates  the aggregates to compute
+     * @return  the table of the grouping values and aggregates of each group
+     */
+    public Table groupBy (String groupCols, String aggregates)
+    {
+        return groupBy (groupCols, aggregates, parallelism);
+    } // groupBy
+
+    /***************************************************************************
+     * Group and aggregate the tuples using up to dop worker threads, in two
+     * phases: each chunk of tuples (see chunks) is aggregated into its own
+     * partial hash table by one thread, with no shared state or locks, and the
+     * partial tables are then merged in chunk order, so the groups come out in
+     * the same order as in a serial aggregation.
+     * #usage movie.groupBy ("studioName", "count(*) avg(length)", 8)
+     * @param groupCols   the grouping attributes (may be empty)
+     * @param aggregates  the aggregates to compute
+     * @param dop         the degree of parallelism for this query
+     * @return  the table of the grouping values and aggregates of each group
+     */
+    public Table groupBy (String groupCols, String aggregates, int dop)
+    {
+        out.println ("RA> " + name + ".groupBy (" + groupCols + ", " + aggregates + ")");
+
+        String [] gAttribute = groupCols.trim ().isEmpty () ? new String [0] : groupCols.trim ().split ("\\s+");
+        String [] agg        = aggregates.trim ().split ("\\s+");
+        int []    gCols      = match (gAttribute);
+        int []    fn         = new int [agg.length];
+        int []    aCols      = new int [agg.length];
+        String [] rAttribute = Arrays.copyOf (gAttribute, gAttribute.length + agg.length);
+        Class []  rDomain    = Arrays.copyOf (extractDom (domain, gCols), gAttribute.length + agg.length);
+        for (int a = 0; a < agg.length; a++) {
+            int open = agg [a].indexOf ('(');
+            String arg = agg [a].endsWith (")") && open > 0 ? agg [a].substring (open + 1, agg [a].length () - 1) : null;
+            fn [a]    = (arg == null) ? -1 : HashAggregate.function (agg [a].substring (0, open));
+            aCols [a] = (arg == null || arg.equals ("*")) ? -1 : columnPos (arg);
+            if (fn [a] < 0 || aCols [a] < 0 && ! (fn [a] == HashAggregate.COUNT && "*".equals (arg))) {
+                out.println ("groupBy: error - malformed aggregate " + agg [a]);
+                return new Table (name + count++, gAttribute, extractDom (domain, gCols), gAttribute);
+            } // if
+            rAttribute [gAttribute.length + a] = agg [a];
+            rDomain [gAttribute.length + a]    = HashAggregate.resultDomain (fn [a], (aCols [a] < 0) ? null : domain [aCols [a]]);
+        } // for
+
+        List <HashAggregate> partial = chunks (dop, (part, lo) -> {
+            HashAggregate h = new HashAggregate (gCols, fn, aCols, domain);
+            for (Comparable [] tup : part) h.add (tup);
+            return h;
+        });
+        HashAggregate groups = partial.get (0);
+        for (int i = 1; i < partial.size (); i++) groups.merge (partial.get (i));
+
+        String [] rKey   = (gAttribute.length > 0) ? gAttribute : rAttribute;
+        Table     result = new Table (name + count++, rAttribute, rDomain, rKey);
+        int []    keyCols = result.match (rKey);
+        for (Comparable [] tup : groups.result (rDomain)) result.append (tup, keyCols);
+        return result;
+    } // groupBy
+
+    /***************************************************************************
+     * Order the tuples on the given columns (major first), each ascending unless
+     * its descending flag is set.  The tuples are sorted by an external merge
+     * sort (see ExternalSort) that spills sorted runs to disk when they exceed
+     * the memory budget, so the sort itself is not bounded by the heap.  To
+     * read the sorted tuples without materializing them, use query ().orderBy.
+     * #usage movie.orderBy ("year title", true)
+     * @param columns     the attributes to order on
+     * @param descending  whether each attribute is ordered in descending order
+     * @return  the table of the tuples in order
+     */
+    public Table orderBy (String columns, boolean... descending)
+    {
+        out.println ("RA> " + name + ".orderBy (" + columns + ", " + Arrays.toString (descending) + ")");
+
+        Table  result  = new Table (name + count++, attribute, domain, key);
+        int [] keyCols = match (key);
+        int [] sortCols = match (columns.trim ().split ("\\s+"));
+        ExternalSort sorter = new ExternalSort (this, sortCols, descending, memoryBudget);
+        try {
+            Iterator <Comparable []> sorted = sorter.sort (tuples.iterator ());
+            while (sorted.hasNext ()) result.append (sorted.next (), keyCols);
+        } finally {
+            sorter.close ();                                    // delete the runs, also on failure
+        } // try
+        return result;
+    } // orderBy
+
+    /***************************************************************************
+     * Join this table and table2 on a condition made of one or more comparisons
+     * combined with "&".  If an attribute name appears in both tables,
      * assume it is from the first table unless it is qualified with the first
      * letter of the second table's name (e.g., "s.").
      * In the result, disambiguate the attribute names in a similar way
@@ -252,6 +781,7 @@ public class Table
      * (this) to the table containing the primary key (table2).
      * #usage movie.join ("studioNo == name", studio);
      * #usage movieStar.join ("name == s.name", starsIn);
+     * #usage movie.join ("title == movieTitle & year == movieYear", starsIn);
      * @param condition  the join condition for tuples
      * @param table2     the rhs table in the join operation
      * @return  the table representing the join (this |><| table2)
@@ -261,22 +791,7 @@ public class Table
     {
         out.println ("RA> " + this.name + ".join (" + condition + ", " + table2.name + ")");
         
-        int t1_colNo=0; // column to join on in this.table
-        int t2_colNo=0; // column to join on in table2
-        String[] comparison = condition.split(" "); // splits the condition into an array
-        
-        for(int j=0; j<attribute.length; j++){ // finds the column # in this.table to join on
-        	if(comparison[0].equals(attribute[j])){
-        		t1_colNo = j;
-        		break;
-        	}
-        }
-        for(int j=0; j<table2.attribute.length; j++){ // finds the column # in table2 to join on
-        	if(comparison[2].equals(table2.attribute[j])){
-        		t2_colNo = j;
-        		break;
-        	}
-        }
+        JoinCondition jc = parseJoin (condition, table2); // column positions of the join terms
         
         String[] attr = new String[attribute.length + table2.attribute.length];
         int a=0;
@@ -306,112 +821,813 @@ public class Table
         	a++;
         }
         
-        for(int i=0; i<attribute.length; i++){
-        	if(comparison[2].equals(attribute[i])){ // updating conditional statement with new column name
-        		String prefix = table2.getName();//.substring(0, 1);
-				prefix += "_";
-        		comparison[2] = prefix + attribute[i];
-        		break;
-			}
-        }
-        
-        
         Table crossProd = new Table (name + count++, attr, dom, key);  // uses created attribute and domain arrays to create a new table with the proper column names and types
+        if (jc == null) return crossProd;
         
+        if (jc.eq1.length > 0) { // pick the join algorithm: index probes first, as they never read all of table2
+        	int probe = table2.indexedTerm (jc, this);
+        	if (table2.keyOrder (jc.eq2) != null && sameDomains (jc, table2)) {
+        		lastJoin = "indexJoin";
+        		indexJoin (jc, table2, crossProd);     // point lookups on table2's primary key
+        	} else if (probe >= 0 && probeCheaper (jc, probe, table2)) {
+        		lastJoin = "secondaryIndexJoin";
+        		secondaryIndexJoin (jc, probe, table2, crossProd);
+        	} else if (table2.tuples.size () * (long) table2.tupleSize () > memoryBudget) {
+        		lastJoin = "graceHashJoin";
+        		graceHashJoin (jc, table2, crossProd, tuples, table2.tuples, null, 0);
+        	} else if (parallelism > 1 && tuples.size () + table2.tuples.size () >= PARALLEL_THRESHOLD) {
+        		lastJoin = "parallelHashJoin";
+        		parallelHashJoin (jc, table2, crossProd);
+        	} else {
+        		lastJoin = "hashJoin";
+        		hashJoin (jc, table2, crossProd);
+        	} // if
+        } else if (domain [jc.th1 [0]] == table2.domain [jc.th2 [0]]) { // only theta terms: merge on the first one
+        	lastJoin = "sortMergeJoin";
+        	sortMergeJoin (jc, table2, crossProd);
+        } else {
+        	lastJoin = "nestedLoopJoin";
+        	nestedLoopJoin (jc, table2, crossProd);
+        } // if
+        return crossProd;
+    } // join
+
+    /***************************************************************************
+     * Semi-join this table and table2: keep the tuples of this table that have at
+     * least one matching tuple in table2.  Only the schema of this table is kept
+     * and no joined tuples are built.
+     * #usage movie.semiJoin ("studioName == name", studio)
+     * @param condition  the join condition for tuples
+     * @param table2     the rhs table in the semi-join operation
+     * @return  the table of tuples in this table with a match (this |>< table2)
+     */
+    public Table semiJoin (String condition, Table table2)
+    {
+        out.println ("RA> " + name + ".semiJoin (" + condition + ", " + table2.name + ")");
+
+        return matchJoin (condition, table2, true);
+    } // semiJoin
+
+    /***************************************************************************
+     * Anti-join this table and table2: keep the tuples of this table that have
+     * no matching tuple in table2.  Only the schema of this table is kept.
+     * #usage movieStar.antiJoin ("name == starName", starsIn)
+     * @param condition  the join condition for tuples
+     * @param table2     the rhs table in the anti-join operation
+     * @return  the table of tuples in this table without a match (this |> table2)
+     */
+    public Table antiJoin (String condition, Table table2)
+    {
+        out.println ("RA> " + name + ".antiJoin (" + condition + ", " + table2.name + ")");
+
+        return matchJoin (condition, table2, false);
+    } // antiJoin
+
+    /***************************************************************************
+     * Keep the tuples of this table according to whether they match a tuple of
+     * table2.  Equality terms are probed in table2's primary index when its key
+     * covers them, otherwise in a hash set (or, with residual terms, a hash table)
+     * of table2's join keys.  The search for each outer tuple stops at its first
+     * match.
+     * @param condition  the join condition for tuples
+     * @param table2     the rhs table
+     * @param keep       true to keep matching tuples (semi-join), false to keep
+     *                   non-matching tuples (anti-join)
+     * @return  the table of kept tuples
+     */
+    private Table matchJoin (String condition, Table table2, boolean keep)
+    {
+        Table result = new Table (name + count++, attribute, domain, key);
+        JoinCondition jc = parseJoin (condition, table2);
+        if (jc == null) return result;
+
+        int [] order = table2.keyOrder (jc.eq2);
+        if (jc.eq1.length > 0 && order != null && sameDomains (jc, table2)) {
+            for (Comparable [] tup1 : tuples) {
+                Comparable [] keyVal = new Comparable [order.length];
+                for (int k = 0; k < order.length; k++) keyVal [k] = tup1 [jc.eq1 [order [k]]];
+                Comparable [] tup2 = table2.index.get (new KeyType (keyVal));
+                if ((tup2 != null && jc.residual (tup1, tup2, 0)) == keep) result.tuples.add (tup1);
+            } // for
+
+        } else if (jc.eq1.length > 0 && jc.th1.length == 0) {
+            Set <Object> keys = new HashSet <> ();
+            for (Comparable [] tup2 : table2.tuples) keys.add (hashKey (tup2, jc.eq2));
+            for (Comparable [] tup1 : tuples) {
+                if (keys.contains (hashKey (tup1, jc.eq1)) == keep) result.tuples.add (tup1);
+            } // for
+
+        } else {
+            Map <Object, List <Comparable []>> hTable = (jc.eq1.length > 0) ? buildHashTable (table2.tuples, jc.eq2)
+                                                                             : null;
+            for (Comparable [] tup1 : tuples) {
+                Iterable <Comparable []> candidates = (hTable == null) ? table2.tuples
+                                                                       : hTable.get (hashKey (tup1, jc.eq1));
+                boolean match = false;
+                if (candidates != null) {
+                    for (Comparable [] tup2 : candidates) {
+                        if (jc.residual (tup1, tup2, 0)) { match = true; break; }
+                    } // for
+                } // if
+                if (match == keep) result.tuples.add (tup1);
+            } // for
+        } // if
+
+        int [] keyCols = match (key);
+        for (Comparable [] tup : result.tuples) {                   // index the kept tuples
+            KeyType keyVal = new KeyType (extractTup (tup, keyCols));
+            if (! result.index.containsKey (keyVal)) result.index.put (keyVal, tup);
+        } // for
+        return result;
+    } // matchJoin
+
+    /***************************************************************************
+     * Parse a conjunctive join condition such as "movieTitle == title & movieYear
+     * == year" into the positions of the lhs (this) and rhs (table2) columns.
+     * @param condition  the join condition
+     * @param table2     the rhs table in the join operation
+     * @return  the parsed join condition, or null if it is malformed
+     */
+    JoinCondition parseJoin (String condition, Table table2)
+    {
+        String [] token = condition.trim ().split ("\\s+");
+        if ((token.length + 1) % 4 != 0) {
+            out.println ("join: error - malformed condition " + condition);
+            return null;
+        } // if
+
+        int nTerms = (token.length + 1) / 4, nEq = 0;
+        for (int t = 0; t < nTerms; t++) if (token [4 * t + 1].equals ("==")) nEq++;
+
+        JoinCondition jc = new JoinCondition (nEq, nTerms - nEq);
+        int e = 0, r = 0;
+        for (int t = 0; t < nTerms; t++) {
+            String op = token [4 * t + 1];
+            int col1  = columnPos (token [4 * t]);
+            int col2  = table2.columnPos (token [4 * t + 2]);
+            if (col1 < 0 || col2 < 0 || ! isComparison (op)
+                         || (t + 1 < nTerms && ! token [4 * t + 3].equals ("&"))) {
+                out.println ("join: error - malformed condition " + condition);
+                return null;
+            } // if
+            if (op.equals ("==")) {
+                jc.eq1 [e]   = col1;
+                jc.eq2 [e++] = col2;
+            } else {
+                jc.th1 [r]   = col1;
+                jc.thOp [r]  = op;
+                jc.th2 [r++] = col2;
+            } // if
+        } // for
+        return jc;
+    } // parseJoin
+
+    /***************************************************************************
+     * Determine whether the equality columns of both tables have the same domains,
+     * so that lhs values can be used to build keys for table2's index.
+     * @param jc      the join condition
+     * @param table2  the rhs table in the join operation
+     * @return  whether the domains of the equality columns match
+     */
+    private boolean sameDomains (JoinCondition jc, Table table2)
+    {
+        for (int i = 0; i < jc.eq1.length; i++) {
+            if (domain [jc.eq1 [i]] != table2.domain [jc.eq2 [i]]) return false;
+        } // for
+        return true;
+    } // sameDomains
+
+    /***************************************************************************
+     * Equi-join this table and table2 using an index nested-loop join.  For each
+     * outer tuple a key is built from its join values (in table2's key order) and
+     * looked up in table2's primary index (TreeMap, BpTree or LinHash), so no
+     * inner tuples are scanned.  Requires table2's key to cover exactly the
+     * equality columns (see keyOrder).
+     * @param jc      the join condition
+     * @param table2  the rhs table in the join operation
+     * @param result  the table receiving the joined tuples
+     */
+    private void indexJoin (JoinCondition jc, Table table2, Table result)
+    {
+        int [] order = table2.keyOrder (jc.eq2);
+        for (Comparable [] tup1 : tuples) {
+            Comparable [] keyVal = new Comparable [order.length];
+            for (int k = 0; k < order.length; k++) keyVal [k] = tup1 [jc.eq1 [order [k]]];
+            Comparable [] tup2 = table2.index.get (new KeyType (keyVal));
+            if (tup2 != null && jc.residual (tup1, tup2, 0)) result.insert (concat (tup1, tup2));
+        } // for
+    } // indexJoin
+
+    /***************************************************************************
+     * Equi-join this table and table2 by probing a secondary index of table2 on
+     * one of the equality columns.  Each outer tuple looks up the rows of table2
+     * having its value; each candidate is checked against all the equality terms
+     * and the residual theta terms.
+     * @param jc      the join condition
+     * @param term    the equality term whose table2 column is indexed
+     * @param table2  the rhs table in the join operation
+     * @param result  the table receiving the joined tuples
+     */
+    private void secondaryIndexJoin (JoinCondition jc, int term, Table table2, Table result)
+    {
+        Map <KeyType, List <Integer>> idx = table2.colIndex.get (jc.eq2 [term]);
+        for (Comparable [] tup1 : tuples) {
+            List <Integer> rows = idx.get (new KeyType (new Comparable [] { tup1 [jc.eq1 [term]] }));
+            if (rows == null) continue;
+            for (int row : rows) {
+                Comparable [] tup2 = table2.tuples.get (row);
+                if (jc.matches (tup1, tup2)) result.insert (concat (tup1, tup2));
+            } // for
+        } // for
+    } // secondaryIndexJoin
+
+    /***************************************************************************
+     * Determine whether probing table2's secondary index on one equality column
+     * is estimated to be cheaper than a hash join.  Each probe fetches the rows
+     * of table2 having the probed value, about count / distinct of them by the
+     * column's statistics, while a hash join reads both inputs once.  Without
+     * statistics, probing is chosen when this table is not the larger one.
+     * @param jc      the join condition
+     * @param term    the equality term whose table2 column is indexed
+     * @param table2  the rhs table in the join operation
+     * @return  whether to use the index probe join
+     */
+    private boolean probeCheaper (JoinCondition jc, int term, Table table2)
+    {
+        if (table2.stats == null) return tuples.size () <= table2.tuples.size ();
+        ColumnStats s = table2.stats [jc.eq2 [term]];
+        double perProbe = (double) s.getCount () / Math.max (1, s.getDistinct ());
+        return tuples.size () * (1.0 + perProbe) <= tuples.size () + table2.tuples.size ();
+    } // probeCheaper
+
+    /***************************************************************************
+     * Return the position of an equality term of a join condition whose column in
+     * this (rhs) table has a secondary index and the same domain as the lhs column.
+     * @param jc      the join condition
+     * @param table1  the lhs table in the join operation
+     * @return  the position of the indexed equality term, or -1 if there is none
+     */
+    private int indexedTerm (JoinCondition jc, Table table1)
+    {
+        for (int i = 0; i < jc.eq2.length; i++) {
+            if (colIndex.containsKey (jc.eq2 [i]) && domain [jc.eq2 [i]] == table1.domain [jc.eq1 [i]]) return i;
+        } // for
+        return -1;
+    } // indexedTerm
+
+    /***************************************************************************
+     * Equi-join this table and table2 using a build/probe hash join.  The smaller
+     * input is hashed on its (possibly composite) join key and the other input is
+     * streamed through the hash table, so the join runs in O(n + m + output)
+     * instead of O(n * m).  A Bloom filter over the build keys is pushed into the
+     * probe scan to drop tuples that cannot match before they are looked up.
+     * @param jc      the join condition
+     * @param table2  the rhs table in the join operation
+     * @param result  the table receiving the joined tuples
+     */
+    private void hashJoin (JoinCondition jc, Table table2, Table result)
+    {
+        boolean buildLeft = tuples.size () < table2.tuples.size ();   // build on the smaller input
+        List <Comparable []> build = buildLeft ? tuples : table2.tuples;
+        List <Comparable []> probe = buildLeft ? table2.tuples : tuples;
+        int [] buildCols = buildLeft ? jc.eq1 : jc.eq2;
+        int [] probeCols = buildLeft ? jc.eq2 : jc.eq1;
+
+        Map <Object, List <Comparable []>> hTable = buildHashTable (build, buildCols);
+        BloomFilter bloom = new BloomFilter (build.size (), BLOOM_FPP);
+        for (Comparable [] tup : build) bloom.add (hashKey (tup, buildCols));
+        lastBloom = bloom;
+
+        Table probeTable = buildLeft ? table2 : this;
+        for (Comparable [] tup : probeTable.bloomScan (probe, probeCols, bloom)) {
+            List <Comparable []> bucket = hTable.get (hashKey (tup, probeCols));
+            if (bucket == null) continue;
+            for (Comparable [] match : bucket) {
+                Comparable [] tup1 = buildLeft ? match : tup;
+                Comparable [] tup2 = buildLeft ? tup : match;
+                if (jc.residual (tup1, tup2, 0)) result.insert (concat (tup1, tup2));
+            } // for
+        } // for
+    } // hashJoin
+
+    /***************************************************************************
+     * Build a hash table mapping join keys to the tuples having that key.
+     * @param tups  the tuples to hash
+     * @param cols  the join columns
+     * @return  the hash table
+     */
+    private static Map <Object, List <Comparable []>> buildHashTable (Iterable <Comparable []> tups, int [] cols)
+    {
+        Map <Object, List <Comparable []>> hTable = new HashMap <> ();
+        for (Comparable [] tup : tups) {
+            Object hKey = hashKey (tup, cols);
+            List <Comparable []> bucket = hTable.get (hKey);
+            if (bucket == null) {
+                bucket = new ArrayList <> ();
+                hTable.put (hKey, bucket);
+            } // if
+            bucket.add (tup);
+        } // for
+        return hTable;
+    } // buildHashTable
+
+    /***************************************************************************
+     * Equi-join this table and table2 using a parallel partitioned hash join.
+     * Both inputs are radix-partitioned on the hash of their join key, so that
+     * matching tuples always fall in the same partition.  The partitions are then
+     * joined independently on a ForkJoinPool, each task writing to its own output
+     * list, and the outputs are concatenated into the result.  As in hashJoin, the
+     * smaller input is the build side.  If orderedJoin is set, the partition
+     * outputs are merged on the probe row number instead, which reproduces the
+     * order of the serial hash join (probe rows in order, each followed by its
+     * matches in build order).
+     * @param jc      the join condition
+     * @param table2  the rhs table in the join operation
+     * @param result  the table receiving the joined tuples
+     */
+    private void parallelHashJoin (final JoinCondition jc, final Table table2, Table result)
+    {
+        final boolean buildLeft = tuples.size () < table2.tuples.size ();   // build on the smaller input, as hashJoin
+        final List <Comparable []> build = buildLeft ? tuples : table2.tuples;
+        final List <Comparable []> probe = buildLeft ? table2.tuples : tuples;
+        final int [] buildCols = buildLeft ? jc.eq1 : jc.eq2;
+        final int [] probeCols = buildLeft ? jc.eq2 : jc.eq1;
+
+        final int nParts = Integer.highestOneBit (4 * parallelism);      // a power of 2
+        final int [] [] partB  = radixPartition (build, buildCols, nParts);
+        final int [] [] partP  = radixPartition (probe, probeCols, nParts);
+        final int [] [] rowIds = new int [nParts] [];                     // probe row of each output
+
+        List <Callable <List <Comparable []>>> tasks = new ArrayList <> ();
+        for (int p = 0; p < nParts; p++) {
+            final int q = p;
+            tasks.add (() -> {
+                List <Comparable []> part = new ArrayList <> (partB [q].length);
+                for (int j : partB [q]) part.add (build.get (j));
+                Map <Object, List <Comparable []>> hTable = buildHashTable (part, buildCols);
+
+                List <Comparable []> out  = new ArrayList <> ();
+                int []               rows = new int [16];
+                for (int i : partP [q]) {
+                    Comparable [] tup = probe.get (i);
+                    List <Comparable []> bucket = hTable.get (hashKey (tup, probeCols));
+                    if (bucket == null) continue;
+                    for (Comparable [] match : bucket) {
+                        Comparable [] tup1 = buildLeft ? match : tup;
+                        Comparable [] tup2 = buildLeft ? tup : match;
+                        if (! jc.residual (tup1, tup2, 0)) continue;
+                        if (out.size () == rows.length) rows = Arrays.copyOf (rows, 2 * rows.length);
+                        rows [out.size ()] = i;
+                        out.add (concat (tup1, tup2));
+                    } // for
+                } // for
+                rowIds [q] = rows;
+                return out;
+            });
+        } // for
+
+        List <List <Comparable []>> outputs = new ArrayList <> ();
+        ForkJoinPool pool = new ForkJoinPool (parallelism);
+        try {
+            for (Future <List <Comparable []>> f : pool.invokeAll (tasks)) outputs.add (f.get ());
+        } catch (Exception ex) {
+            throw new RuntimeException ("Table.parallelHashJoin: " + ex, ex);
+        } finally {
+            pool.shutdown ();
+        } // try
+
+        if (! orderedJoin) {
+            for (List <Comparable []> out : outputs) {
+                for (Comparable [] tup : out) result.insert (tup);
+            } // for
+            return;
+        } // if
+
+        // k-way merge of the partition outputs on the probe row number
+        int [] pos = new int [nParts];
+        PriorityQueue <Integer> heap = new PriorityQueue <> (nParts,
+            (p1, p2) -> Integer.compare (rowIds [p1] [pos [p1]], rowIds [p2] [pos [p2]]));
+        for (int p = 0; p < nParts; p++) if (! outputs.get (p).isEmpty ()) heap.add (p);
+        while (! heap.isEmpty ()) {
+            int p = heap.poll ();
+            result.insert (outputs.get (p).get (pos [p]++));
+            if (pos [p] < outputs.get (p).size ()) heap.add (p);
+        } // while
+    } // parallelHashJoin
+
+    /***************************************************************************
+     * Split the row numbers of a tuple list into partitions on the hash of a key.
+     * @param tups    the tuples to partition
+     * @param cols    the key columns to hash
+     * @param nParts  the number of partitions (a power of 2)
+     * @return  the row numbers belonging to each partition, in ascending order
+     */
+    private static int [] [] radixPartition (List <Comparable []> tups, int [] cols, int nParts)
+    {
+        int [] part  = new int [tups.size ()];
+        int [] sizes = new int [nParts];
+        for (int i = 0; i < part.length; i++) {
+            int h = hashKey (tups.get (i), cols).hashCode ();
+            part [i] = (h ^ (h >>> 16)) & (nParts - 1);
+            sizes [part [i]]++;
+        } // for
+
+        int [] [] rows = new int [nParts] [];
+        for (int p = 0; p < nParts; p++) rows [p] = new int [sizes [p]];
+        int [] fill = new int [nParts];
+        for (int i = 0; i < part.length; i++) rows [part [i]] [fill [part [i]]++] = i;
+        return rows;
+    } // radixPartition
+
+    /***************************************************************************
+     * Equi-join tuples of this table and table2 using a Grace hash join.  If the
+     * build side (tups2) fits in the memory budget it is joined in memory,
+     * otherwise both sides are hash-partitioned into FileList spill files
+     * (packed records, see pack/unpack) and each pair of partitions is joined
+     * recursively, re-partitioning with a different hash at every level.  A Bloom
+     * filter over all of table2's join keys is built first, so that tuples of
+     * this table that cannot match are dropped before being spilled or unpacked.
+     * @param jc      the join condition
+     * @param table2  the rhs table in the join operation
+     * @param result  the table receiving the joined tuples
+     * @param tups1   the tuples of this table to join
+     * @param tups2   the tuples of table2 to join
+     * @param bloom   the Bloom filter over table2's join keys (null to build it)
+     * @param depth   the partitioning level (0 for the original inputs)
+     */
+    private void graceHashJoin (JoinCondition jc, Table table2, Table result,
+                                List <Comparable []> tups1, List <Comparable []> tups2,
+                                BloomFilter bloom, int depth)
+    {
+        if (bloom == null) {
+            bloom = new BloomFilter (tups2.size (), BLOOM_FPP);
+            for (Comparable [] tup2 : tups2) bloom.add (hashKey (tup2, jc.eq2));
+            lastBloom = bloom;
+        } // if
+
+        if (tups2.size () * (long) table2.tupleSize () <= memoryBudget || depth == GRACE_MAX_DEPTH) {
+            Map <Object, List <Comparable []>> hTable = buildHashTable (tups2, jc.eq2);
+            for (Comparable [] tup1 : bloomScan (tups1, jc.eq1, bloom)) {
+                List <Comparable []> bucket = hTable.get (hashKey (tup1, jc.eq1));
+                if (bucket == null) continue;
+                for (Comparable [] tup2 : bucket) {
+                    if (jc.residual (tup1, tup2, 0)) result.insert (concat (tup1, tup2));
+                } // for
+            } // for
+            return;
+        } // if
+
+        FileList [] parts1 = null, parts2 = null;
+        try {
+            parts1 = spill (bloomScan (tups1, jc.eq1, bloom), jc.eq1, depth, stringWidth (tups1));
+            parts2 = table2.spill (tups2, jc.eq2, depth, table2.stringWidth (tups2));
+            for (int p = 0; p < GRACE_PARTITIONS; p++) {
+                if (parts1 [p].size () == 0 || parts2 [p].size () == 0) continue;
+                graceHashJoin (jc, table2, result, parts1 [p], parts2 [p], bloom, depth + 1);
+            } // for
+        } finally {
+            deleteAll (parts1);
+            deleteAll (parts2);
+        } // try
+    } // graceHashJoin
+
+    /***************************************************************************
+     * Scan tuples having this table's schema, keeping only those whose join key
+     * passes the Bloom filter.  For a FileList only the join columns of each
+     * record are unpacked until the record passes the filter.
+     * @param tups   the tuples to scan (in memory or in a FileList)
+     * @param cols   the join columns
+     * @param bloom  the Bloom filter over the other side's join keys
+     * @return  the tuples that may have a match
+     */
+    private Iterable <Comparable []> bloomScan (final List <Comparable []> tups, final int [] cols,
+                                                final BloomFilter bloom)
+    {
+        return () -> new Iterator <Comparable []> () {
+            private int           i    = 0;
+            private Comparable [] next = advance ();
+
+            private Comparable [] advance ()
+            {
+                while (i < tups.size ()) {
+                    int j = i++;
+                    if (tups instanceof FileList) {                     // its records have its table's layout
+                        Table   fmt    = ((FileList) tups).getTable ();
+                        byte [] record = ((FileList) tups).getRecord (j);
+                        Comparable [] keyVal = new Comparable [cols.length];
+                        for (int k = 0; k < cols.length; k++) keyVal [k] = fmt.unpackColumn (record, cols [k]);
+                        Object hKey = (cols.length == 1) ? keyVal [0] : new KeyType (keyVal);
+                        if (bloom.mightContain (hKey)) return fmt.unpack (record);
+                    } else {
+                        Comparable [] tup = tups.get (j);
+                        if (bloom.mightContain (hashKey (tup, cols))) return tup;
+                    } // if
+                } // while
+                return null;
+            } // advance
+
+            public boolean hasNext () { return next != null; }
+
+            public Comparable [] next ()
+            {
+                if (next == null) throw new NoSuchElementException ();
+                Comparable [] tup = next;
+                next = advance ();
+                return tup;
+            } // next
+        };
+    } // bloomScan
+
+    /***************************************************************************
+     * Hash-partition tuples having this table's schema into temporary FileLists
+     * (see spillTable).  If the partitioning fails, the files already created
+     * are deleted.
+     * @param tups   the tuples to partition
+     * @param cols   the key columns to hash on
+     * @param depth  the partitioning level, used to seed the hash
+     * @param width  the byte length of the longest string in tups
+     * @return  the spill files, one per partition
+     */
+    private FileList [] spill (Iterable <Comparable []> tups, int [] cols, int depth, int width)
+    {
+        FileList [] parts = new FileList [GRACE_PARTITIONS];
+        try {
+            for (int p = 0; p < GRACE_PARTITIONS; p++) parts [p] = FileList.temp (spillTable ("_spill", width));
+            for (Comparable [] tup : tups) {
+                int h = (hashKey (tup, cols).hashCode () + depth) * 0x9E3779B9;   // reseed the hash per level
+                h ^= h >>> 16;
+                if (! parts [(h >>> (4 * depth)) & (GRACE_PARTITIONS - 1)].add (tup)) {
+                    throw new IllegalStateException ("Table.spill: unable to write tuple " + Arrays.toString (tup));
+                } // if
+            } // for
+        } catch (RuntimeException ex) {
+            deleteAll (parts);
+            throw ex;
+        } // try
+        return parts;
+    } // spill
+
+    /***************************************************************************
+     * Create an empty table with this table's schema to describe the records of
+     * a spill file, with string fields wide enough for strings of width bytes.
+     * @param suffix  the suffix appended to create the new table name
+     * @param width   the byte length of the longest string to be spilled
+     * @return  the table describing the spilled records
+     */
+    Table spillTable (String suffix, int width)
+    {
+        Table t = new Table (name + suffix + count++, attribute, domain, key);
+        t.stringSize = Math.max (1, width);
+        return t;
+    } // spillTable
+
+    /***************************************************************************
+     * Return the byte length (in UTF-8) of the longest string in tuples having
+     * this table's schema.  For a spill file it is the file's string size.
+     * @param tups  the tuples
+     * @return  the maximum string length in bytes
+     */
+    int stringWidth (List <Comparable []> tups)
+    {
+        if (tups instanceof FileList) return ((FileList) tups).getTable ().stringSize;
+
+        int width = 0;
+        for (int j = 0; j < domain.length; j++) {
+            if (domain [j] != String.class) continue;
+            for (Comparable [] tup : tups) width = Math.max (width, utf8Length ((String) tup [j]));
+        } // for
+        return width;
+    } // stringWidth
+
+    /***************************************************************************
+     * Return the number of bytes of a string encoded in UTF-8.
+     * @param str  the string
+     * @return  its encoded length
+     */
+    private static int utf8Length (String str)
+    {
+        int n = 0;
+        for (int i = 0; i < str.length (); i++) {
+            char c = str.charAt (i);
+            if (c < 0x80)                       n += 1;
+            else if (c < 0x800)                 n += 2;
+            else if (Character.isSurrogate (c)) n += 2;    // a pair takes 4 bytes
+            else                                n += 3;
+        } // for
+        return n;
+    } // utf8Length
+
+    /***************************************************************************
+     * Close and delete spill files, skipping missing ones.
+     * @param files  the spill files (may be null)
+     */
+    private static void deleteAll (FileList [] files)
+    {
+        if (files == null) return;
+        for (FileList f : files) if (f != null) f.delete ();
+    } // deleteAll
+
+    /***************************************************************************
+     * Join this table and table2 on an inequality using a sort-merge join.  Both
+     * inputs are sorted on the columns of the first join term once, after which
+     * the tuples of table2 matching an outer tuple form a prefix and/or suffix of
+     * the sorted inner list.  Two cursors track the boundaries of the range equal
+     * to the current outer value and only ever move forward, so the join runs in
+     * O(n log n + m log m + output).  Any further terms (e.g., the other bound of
+     * a band condition) are checked on the merged pairs.
+     * @param jc      the join condition (without equality terms)
+     * @param table2  the rhs table in the join operation
+     * @param result  the table receiving the joined tuples
+     */
+    @SuppressWarnings("unchecked")
+    private void sortMergeJoin (JoinCondition jc, Table table2, Table result)
+    {
+        int    t1_colNo = jc.th1 [0];
+        int    t2_colNo = jc.th2 [0];
+        String op       = jc.thOp [0];
+        List <Comparable []> outer = sortedOn (t1_colNo);
+        List <Comparable []> inner = table2.sortedOn (t2_colNo);
+        int n  = inner.size ();
+        int lo = 0;                                     // first inner tuple with value >= outer value
+        int hi = 0;                                     // first inner tuple with value >  outer value
+
+        for (Comparable [] tup1 : outer) {
+            Comparable x = tup1 [t1_colNo];
+            while (lo < n && inner.get (lo) [t2_colNo].compareTo (x) < 0)  lo++;
+            if (hi < lo) hi = lo;
+            while (hi < n && inner.get (hi) [t2_colNo].compareTo (x) <= 0) hi++;
+
+            int from1 = 0, to1 = 0, from2 = 0, to2 = 0; // matching ranges [from1, to1) and [from2, to2)
+            switch (op) {
+            case "<":  from2 = hi; to2 = n;             break;
+            case "<=": from2 = lo; to2 = n;             break;
+            case ">":  to1 = lo;                        break;
+            case ">=": to1 = hi;                        break;
+            case "!=": to1 = lo; from2 = hi; to2 = n;   break;
+            } // switch
+
+            for (int j = from1; j < to1; j++) {
+                if (jc.residual (tup1, inner.get (j), 1)) result.insert (concat (tup1, inner.get (j)));
+            } // for
+            for (int j = from2; j < to2; j++) {
+                if (jc.residual (tup1, inner.get (j), 1)) result.insert (concat (tup1, inner.get (j)));
+            } // for
+        } // for
+    } // sortMergeJoin
+
+    /***************************************************************************
+     * Return the tuples of this table ordered on the given column.  When the
+     * primary index is ordered and keyed on exactly that column its values are
+     * reused, otherwise a sorted copy of the tuples is made.
+     * @param col  the column to order on
+     * @return  the tuples in ascending order of the column
+     */
+    @SuppressWarnings("unchecked")
+    private List <Comparable []> sortedOn (final int col)
+    {
+        if (index instanceof SortedMap && keyOrder (new int [] { col }) != null) {
+            return new ArrayList <> (index.values ());
+        } // if
+
+        List <Comparable []> sorted = new ArrayList <> (tuples);
+        sorted.sort ((t1, t2) -> t1 [col].compareTo (t2 [col]));
+        return sorted;
+    } // sortedOn
+
+    /***************************************************************************
+     * Join this table and table2 by comparing every pair of tuples.  Used as the
+     * fallback for join conditions that can neither be hashed nor merged.
+     * @param jc      the join condition (without equality terms)
+     * @param table2  the rhs table in the join operation
+     * @param result  the table receiving the joined tuples
+     */
+    private void nestedLoopJoin (JoinCondition jc, Table table2, Table result)
+    {
+        for (Comparable [] tup1 : tuples) {
+            for (Comparable [] tup2 : table2.tuples) {
+                if (jc.residual (tup1, tup2, 0)) result.insert (concat (tup1, tup2));
+            } // for
+        } // for
+    } // nestedLoopJoin
+
+    /***************************************************************************
+     * Create ordered (B+Tree) indexes on the given columns, so that select can
+     * answer range conditions on them with a scan of the B+Tree's leaf chain.
+     * #usage movie.createRangeIndex ("year length")
+     * @param columns  the columns to index
+     */
+    public void createRangeIndex (String columns)
+    {
+        for (String column : columns.split (" ")) createIndex (column, IndexKind.BPTREE);
+    } // createRangeIndex
+
+    /***************************************************************************
+     * Create a secondary index on a column.  The column need not be unique: each
+     * value is mapped to the list of row numbers of the tuples having it.  The
+     * index is kept up to date by insert and used by select (for equality and,
+     * if ordered, range conditions) and by join (for equality terms).
+     * #usage movie.createIndex ("studioName", IndexKind.LINHASH)
+     * @param column  the column to index
+     * @param kind    the kind of index to build
+     */
+    @SuppressWarnings("unchecked")
+    public void createIndex (String column, IndexKind kind)
+    {
+        out.println ("DDL> create " + kind + " index on " + name + " (" + column + ")");
+
+        int col = columnPos (column);
+        if (col < 0 || colIndex.containsKey (col) || bitmapIndex.containsKey (col)) return;
+
+        if (kind == IndexKind.BITMAP) {
+            Map <Comparable, RoaringBitmap> bitmaps = new HashMap <> ();
+            for (int row = 0; row < tuples.size (); row++) addBit (bitmaps, tuples.get (row) [col], row);
+            bitmapIndex.put (col, bitmaps);
+            return;
+        } // if
+
+        Map <KeyType, List <Integer>> idx;
+        switch (kind) {
+        case BPTREE:  idx = new BpTree <> (KeyType.class, (Class) List.class);     break;
+        case LINHASH: idx = new LinHash <> (KeyType.class, (Class) List.class, 4); break;
+        default:      idx = new TreeMap <> ();
+        } // switch
+        for (int row = 0; row < tuples.size (); row++) addRow (idx, tuples.get (row) [col], row);
+        colIndex.put (col, idx);
+    } // createIndex
+
+    /***************************************************************************
+     * Add a row number to the row list of a value in a column index.
+     * @param tree   the column index
+     * @param value  the column value of the row
+     * @param row    the row number
+     */
+    private static void addRow (Map <KeyType, List <Integer>> tree, Comparable value, int row)
+    {
+        KeyType       k    = new KeyType (new Comparable [] { value });
+        List <Integer> rows = tree.get (k);
+        if (rows == null) {
+            rows = new ArrayList <> ();
+            tree.put (k, rows);
+        } // if
+        rows.add (row);
+    } // addRow
 
-        
-        switch(comparison[1]){ // switch case for condition of join
-        	case "==":
-        		// populating crossProd.  filling with only tuples where keys are equal
-                for(int i=0; i<tuples.size(); i++){
-                	for(int j=0; j<table2.tuples.size(); j++){//prev: j<attribute.length
-                		if(tuples.get(i)[t1_colNo].equals(table2.tuples.get(j)[t2_colNo])){
-                			// creates temp array with length of cross product and copies this.table tuple into it
-                        	Comparable[] temp = Arrays.copyOf(tuples.get(i), crossProd.attribute.length); 
-                        	for(int k=0; k<table2.attribute.length; k++){ // adds in table2.tuple into temp // prev: k<tuples.size()
-                        		temp[k+this.attribute.length] = table2.tuples.get(j)[k];
-                        	}
-                        	crossProd.insert(temp);
-                		}
-                	}
-                }
-        		break;
-        	case "!=":
-        		// populating crossProd.  filling with only tuples where keys are equal
-                for(int i=0; i<tuples.size(); i++){
-                	for(int j=0; j<table2.tuples.size(); j++){
-                		if(!(tuples.get(i)[t1_colNo].equals(table2.tuples.get(j)[t2_colNo]))){
-                			// creates temp array with length of cross product and copies this.table tuple into it
-                        	Comparable[] temp = Arrays.copyOf(tuples.get(i), crossProd.attribute.length); 
-                        	for(int k=0; k<table2.attribute.length; k++){ // adds in table2.tuple into temp
-                        		temp[k+this.attribute.length] = table2.tuples.get(j)[k];
-                        	}
-                        	crossProd.insert(temp);
-                		}
-                	}
-                }
-        		break;
-        		
-        		
-        	case ">":
-        		for(int i=0; i<tuples.size(); i++){
-                	for(int j=0; j<table2.tuples.size(); j++){
-                		if(tuples.get(i)[t1_colNo].compareTo(table2.tuples.get(j)[t2_colNo]) > 0){
-                			// creates temp array with length of cross product and copies this.table tuple into it
-                        	Comparable[] temp = Arrays.copyOf(tuples.get(i), crossProd.attribute.length); 
-                        	for(int k=0; k<table2.attribute.length; k++){ // adds in table2.tuple into temp
-                        		temp[k+this.attribute.length] = table2.tuples.get(j)[k];
-                        	}
-                        	crossProd.insert(temp);
-                		}
-                	}
-                }
-        		break;
-        	case "<":
-        		for(int i=0; i<tuples.size(); i++){
-                	for(int j=0; j<table2.tuples.size(); j++){
-                		if(tuples.get(i)[t1_colNo].compareTo(table2.tuples.get(j)[t2_colNo]) < 0){
-                			// creates temp array with length of cross product and copies this.table tuple into it
-                        	Comparable[] temp = Arrays.copyOf(tuples.get(i), crossProd.attribute.length); 
-                        	for(int k=0; k<table2.attribute.length; k++){ // adds in table2.tuple into temp
-                        		temp[k+this.attribute.length] = table2.tuples.get(j)[k];
-                        	}
-                        	crossProd.insert(temp);
-                		}
-                	}
-                }
-        		break;
-        	case ">=":
-        		for(int i=0; i<tuples.size(); i++){
-                	for(int j=0; j<table2.tuples.size(); j++){
-                		if(tuples.get(i)[t1_colNo].compareTo(table2.tuples.get(j)[t2_colNo]) >= 0){
-                			// creates temp array with length of cross product and copies this.table tuple into it
-                        	Comparable[] temp = Arrays.copyOf(tuples.get(i), crossProd.attribute.length); 
-                        	for(int k=0; k<table2.attribute.length; k++){ // adds in table2.tuple into temp
-                        		temp[k+this.attribute.length] = table2.tuples.get(j)[k];
-                        	}
-                        	crossProd.insert(temp);
-                		}
-                	}
-                }
-        		break;
-        	case "<=":
-        		for(int i=0; i<tuples.size(); i++){
-                	for(int j=0; j<table2.tuples.size(); j++){
-                		if(tuples.get(i)[t1_colNo].compareTo(table2.tuples.get(j)[t2_colNo]) <= 0){
-                			// creates temp array with length of cross product and copies this.table tuple into it
-                        	Comparable[] temp = Arrays.copyOf(tuples.get(i), crossProd.attribute.length); 
-                        	for(int k=0; k<table2.attribute.length; k++){ // adds in table2.tuple into temp
-                        		temp[k+this.attribute.length] = table2.tuples.get(j)[k];
-                        	}
-                        	crossProd.insert(temp);
-                		}
-                	}
-                }
-        		break;
-        }
-        return crossProd;
-    } // join
+    /***************************************************************************
+     * Add a row number to the bitmap of a value in a bitmap index.
+     * @param bitmaps  the bitmap index
+     * @param value    the column value of the row
+     * @param row      the row number
+     */
+    private static void addBit (Map <Comparable, RoaringBitmap> bitmaps, Comparable value, int row)
+    {
+        RoaringBitmap bm = bitmaps.get (value);
+        if (bm == null) {
+            bm = new RoaringBitmap ();
+            bitmaps.put (value, bm);
+        } // if
+        bm.add (row);
+    } // addBit
+
+    /***************************************************************************
+     * Determine whether this table is a view that still reads its tuples from
+     * a base list (see projectView and selection).
+     * @return  whether the table is a view
+     */
+    private boolean isView ()
+    {
+        return tuples instanceof ViewList && ! ((ViewList) tuples).owned;
+    } // isView
+
+    /***************************************************************************
+     * Make a view an ordinary table before it is modified: copy its tuples into
+     * storage of its own and index them on the key (the first tuple per key, as
+     * append does).  Secondary indexes hold row numbers, which do not change.
+     */
+    private void ownStorage ()
+    {
+        if (! isView ()) return;
+        ((ViewList) tuples).detach ();
+        index.clear ();
+        int [] keyCols = match (key);
+        for (Comparable [] tup : tuples) {
+            KeyType keyVal = new KeyType (extractTup (tup, keyCols));
+            if (! index.containsKey (keyVal)) index.put (keyVal, tup);
+        } // for
+    } // ownStorage
+
+    /***************************************************************************
+     * Append a tuple from a compatible table, indexing it on its key if the key
+     * is new.  Unlike insert it neither logs nor type-checks the tuple, which was
+     * checked when it was inserted into its own table.
+     * @param tup      the tuple to append
+     * @param keyCols  the positions of the key columns
+     */
+    void append (Comparable [] tup, int [] keyCols)
+    {
+        tuples.add (tup);
+        KeyType keyVal = new KeyType (extractTup (tup, keyCols));
+        if (! index.containsKey (keyVal)) index.put (keyVal, tup);
+    } // append
 
     /***************************************************************************
      * Insert a tuple to the table.
@@ -443,6 +1659,7 @@ public class Table
         }
         
         if (typeCheck (tup, domain)) {
+        	ownStorage ();                  // a view copies its tuples before anything is written
         	Comparable [] keyVal = new Comparable [key.length];
             
             int [] cols = match (key);
@@ -451,11 +1668,18 @@ public class Table
             	keyVal [j] = tup [cols [j]];
             }    
             KeyType type = new KeyType(keyVal);
-            if(!(this.index.containsKey(type))){ // if there is not a duplicate, add tuple into index and tuple list
+            tuples.add(tup);
+            if(!(this.index.containsKey(type))){ // if there is not a duplicate, add tuple into index
             	index.put(type,tup);
-            	tuples.add(tup);
-            }else{
-            	tuples.add(tup);
+            }
+            for (Map.Entry <Integer, Map <KeyType, List <Integer>>> e : colIndex.entrySet ()) {
+            	addRow (e.getValue (), tup [e.getKey ()], tuples.size () - 1);
+            }
+            for (Map.Entry <Integer, Map <Comparable, RoaringBitmap>> e : bitmapIndex.entrySet ()) {
+            	addBit (e.getValue (), tup [e.getKey ()], tuples.size () - 1);
+            }
+            if (stats != null) {
+            	for (int j = 0; j < stats.length; j++) stats [j].add (tup [j]);
             }
 //          index.put (new KeyType (keyVal), tup); // this is original code
         	
@@ -469,6 +1693,137 @@ public class Table
         } // if
     } // insert
 
+    /***************************************************************************
+     * Compute the statistics of every column (row count, null count, distinct
+     * count, min, max and an equi-depth histogram).  From then on insert keeps
+     * them up to date, and select and join consult them to choose between index
+     * probes and scans.
+     * #usage movie.analyze ()
+     */
+    public void analyze ()
+    {
+        out.println ("DDL> analyze " + name);
+
+        ColumnStats [] s = new ColumnStats [attribute.length];
+        for (int j = 0; j < s.length; j++) s [j] = new ColumnStats (tuples, j);
+        stats = s;
+        plans.clear ();                                         // re-estimate cached predicates
+    } // analyze
+
+    /***************************************************************************
+     * Return the statistics of a column.
+     * @param column  the column name
+     * @return  the column's statistics, or null if the table has not been
+     *          analyzed or has no such column
+     */
+    public ColumnStats getStats (String column)
+    {
+        int col = columnPos (column);
+        return (stats == null || col < 0) ? null : stats [col];
+    } // getStats
+
+    /***************************************************************************
+     * Estimate the fraction of tuples satisfying a selection condition.
+     * #usage movie.selectivity ("genre == drama & year > 1990")
+     * @param condition  the selection condition
+     * @return  the estimated selectivity, between 0 and 1
+     */
+    public double selectivity (String condition)
+    {
+        return selectivity (compile (condition));
+    } // selectivity
+
+    /***************************************************************************
+     * Estimate the fraction of tuples satisfying a compiled predicate, from the
+     * column statistics if available.  Terms are assumed independent, and terms
+     * without statistics get the customary defaults (1/10 for "==", 1/3 for a
+     * range).
+     * @param pred  the compiled predicate
+     * @return  the estimated selectivity, between 0 and 1
+     */
+    double selectivity (Predicate pred)
+    {
+        if (pred instanceof Predicate.Comparison) {
+            Predicate.Comparison c = (Predicate.Comparison) pred;
+            if (stats != null && c.col2 < 0) return stats [c.col].selectivity (c.op, c.value);
+            if (stats != null && c.op == Predicate.EQ) {
+                return 1.0 / Math.max (1, Math.max (stats [c.col].getDistinct (), stats [c.col2].getDistinct ()));
+            } // if
+            return (c.op == Predicate.EQ) ? 0.1 : (c.op == Predicate.NE) ? 0.9 : 1.0 / 3.0;
+
+        } else if (pred instanceof Predicate.And) {
+            double s = 1.0;
+            for (Predicate p : ((Predicate.And) pred).terms) s *= selectivity (p);
+            return s;
+
+        } else if (pred instanceof Predicate.Or) {
+            double s = 1.0;
+            for (Predicate p : ((Predicate.Or) pred).terms) s *= 1.0 - selectivity (p);
+            return 1.0 - s;
+        } // if
+        return ((Predicate.Constant) pred).truth ? 1.0 : 0.0;
+    } // selectivity
+
+    /***************************************************************************
+     * Set the degree of parallelism (number of worker threads) used by parallel
+     * operators.  A value of 1 makes every operator run serially.
+     * @param dop  the degree of parallelism
+     */
+    public static void setParallelism (int dop)
+    {
+        parallelism = Math.max (1, dop);
+    } // setParallelism
+
+    /***************************************************************************
+     * Set whether parallel joins must produce their tuples in the same order as
+     * the serial hash join (at the cost of a final merge).
+     * @param ordered  whether to order the output of parallel joins
+     */
+    public static void setOrderedJoin (boolean ordered)
+    {
+        orderedJoin = ordered;
+    } // setOrderedJoin
+
+    /***************************************************************************
+     * Set the memory budget for operators that may spill to disk.  A hash join
+     * whose build side packs into more bytes than this runs as a Grace hash join,
+     * and orderBy sorts runs of at most this many bytes in memory.
+     * @param bytes  the memory budget in bytes
+     */
+    public static void setMemoryBudget (long bytes)
+    {
+        memoryBudget = Math.max (1, bytes);
+    } // setMemoryBudget
+
+    /***************************************************************************
+     * Return the memory budget for operators that may spill to disk.
+     * @return  the memory budget in bytes
+     */
+    public static long getMemoryBudget ()
+    {
+        return memoryBudget;
+    } // getMemoryBudget
+
+    /***************************************************************************
+     * Return the Bloom filter built by the most recent hash join, whose statistics
+     * give its false-positive rate and the number of probe tuples it eliminated.
+     * @return  the last Bloom filter, or null if no hash join has run
+     */
+    public static BloomFilter getLastBloomFilter ()
+    {
+        return lastBloom;
+    } // getLastBloomFilter
+
+    /***************************************************************************
+     * Return the name of the algorithm the most recent join used, e.g.,
+     * "indexJoin" or "parallelHashJoin", to check the choice join made.
+     * @return  the algorithm name, or null if no join has run
+     */
+    public static String getLastJoinMethod ()
+    {
+        return lastJoin;
+    } // getLastJoinMethod
+
     /***************************************************************************
      * Get the name of the table.
      * @return  the table's name
@@ -537,6 +1892,91 @@ public class Table
       return false;
     } // compatible
 
+    /***************************************************************************
+     * Determine whether this table and table2 have the same primary key (at the
+     * same positions) and complete indexes, so that a tuple of either can only
+     * equal the tuple with its key in the other (see indexHolds).
+     * @param table2  the other table
+     * @return  whether key lookups can replace hashing whole tuples
+     */
+    private boolean sameKey (Table table2)
+    {
+        return Arrays.equals (key, table2.key) && index.size () == tuples.size ()
+               && table2.index.size () == table2.tuples.size () && Arrays.equals (match (key), table2.match (key));
+    } // sameKey
+
+    /***************************************************************************
+     * Determine whether this table's primary index holds a tuple equal in value
+     * to tup, i.e., the tuple stored under tup's key has the same values.
+     * @param tup      the tuple to look up
+     * @param keyCols  the positions of the key columns in tup
+     * @return  whether an equal tuple is in the index
+     */
+    private boolean indexHolds (Comparable [] tup, int [] keyCols)
+    {
+        Comparable [] found = index.get (new KeyType (extractTup (tup, keyCols)));
+        return found != null && new KeyType (found).equals (new KeyType (tup));
+    } // indexHolds
+
+    /***************************************************************************
+     * Determine whether the primary key consists of exactly the given columns (in
+     * any order) and the index holds every tuple, so that the index can stand in
+     * for a scan.  If so, return for each key attribute its position in cols.
+     * @param cols  the column positions
+     * @return  the position in cols of each key attribute, or null if the primary
+     *          index does not cover the columns
+     */
+    private int [] keyOrder (int [] cols)
+    {
+        if (key.length != cols.length || index.size () != tuples.size ()) return null;
+
+        int [] order = new int [key.length];
+        for (int k = 0; k < key.length; k++) {
+            order [k] = -1;
+            for (int i = 0; i < cols.length; i++) {
+                if (key [k].equals (attribute [cols [i]])) order [k] = i;
+            } // for
+            if (order [k] < 0) return null;
+        } // for
+        return order;
+    } // keyOrder
+
+    /***************************************************************************
+     * Return the attribute names (for query plans; do not modify).
+     * @return  the array of attribute names
+     */
+    String [] attributes ()
+    {
+        return attribute;
+    } // attributes
+
+    /***************************************************************************
+     * Return the attribute domains (for query plans; do not modify).
+     * @return  the array of attribute domains
+     */
+    Class [] domains ()
+    {
+        return domain;
+    } // domains
+
+    /***************************************************************************
+     * Return the primary key (for query plans; do not modify).
+     * @return  the array of key attribute names
+     */
+    String [] keys ()
+    {
+        return key;
+    } // keys
+
+    /***************************************************************************
+     * Return the tuples (for query plans; do not modify).
+     * @return  the list of tuples
+     */
+    List <Comparable []> rows ()
+    {
+        return tuples;
+    } // rows
+
     /***************************************************************************
      * Return the column position for the given column/attribute name.
      * @param column  the given column/attribute name
@@ -557,7 +1997,7 @@ public class Table
      * @param columns  the array of column/attribute names
      * @return  the array of column index positions
      */
-    private int [] match (String [] columns)
+    int [] match (String [] columns)
     {
         int [] colPos = new int [columns.length];
 
@@ -569,65 +2009,286 @@ public class Table
     } // match
 
     /***************************************************************************
-     * Check whether the tuple satisfies the condition.  Use a stack-based postfix
-     * expression evaluation algorithm.
-     * @param postfix  the postfix expression for the condition
-     * @param tup      the tuple to check
-     * @return  whether to keep the tuple
+     * Determine whether a predicate pins every primary key attribute with an
+     * equality to a constant, in any order and combined with "&", and if so
+     * return the key it pins.  The caller looks the key up in the index and
+     * checks the whole predicate on the tuple found, which applies any other
+     * terms as a residual filter.
+     * @param pred  the compiled selection predicate
+     * @return  the pinned key, or null if the predicate does not pin the key or
+     *          the index does not hold every tuple
+     */
+    private KeyType pointKey (Predicate pred)
+    {
+        if (index.size () != tuples.size ()) return null;
+        Predicate [] terms = (pred instanceof Predicate.And) ? ((Predicate.And) pred).terms
+                                                             : new Predicate [] { pred };
+        Comparable [] keyVal = new Comparable [key.length];
+        for (int k = 0; k < key.length; k++) {
+            for (Predicate p : terms) {
+                if (! (p instanceof Predicate.Comparison)) continue;
+                Predicate.Comparison c = (Predicate.Comparison) p;
+                if (c.op == Predicate.EQ && c.col2 < 0 && key [k].equals (attribute [c.col])) {
+                    keyVal [k] = c.value;
+                    break;
+                } // if
+            } // for
+            if (keyVal [k] == null) return null;
+        } // for
+        return new KeyType (keyVal);
+    } // pointKey
+
+    /***************************************************************************
+     * Collect the conditions "&"-ed into a predicate for a column with a secondary
+     * index and return the row numbers satisfying them, obtained from a lookup
+     * (LinHash, equality only) or one traversal of an ordered index (BpTree's leaf
+     * chain or a TreeMap).  The caller checks the whole predicate on these
+     * candidate rows only.
+     * @param pred  the compiled selection predicate
+     * @return  the candidate row numbers in ascending order, or null if no
+     *          indexed column is usefully constrained
+     */
+    private int [] rangeRows (Predicate pred)
+    {
+        if (colIndex.isEmpty ()) return null;
+        Predicate [] terms = (pred instanceof Predicate.And) ? ((Predicate.And) pred).terms
+                                                             : new Predicate [] { pred };
+        for (int col : colIndex.keySet ()) {
+            KeyType lo = null, hi = null;                       // tightest bounds on the column
+            boolean loInc = true, hiInc = true;
+            for (Predicate p : terms) {
+                if (! (p instanceof Predicate.Comparison)) continue;
+                Predicate.Comparison c = (Predicate.Comparison) p;
+                if (c.col != col || c.col2 >= 0 || c.op == Predicate.NE) continue;
+                KeyType v = new KeyType (new Comparable [] { c.value });
+                if (c.op != Predicate.LT && c.op != Predicate.LE) {        // ==, >, >= bound from below
+                    int cmp = (lo == null) ? 1 : v.compareTo (lo);
+                    if (cmp > 0 || cmp == 0 && c.op == Predicate.GT) { lo = v; loInc = c.op != Predicate.GT; }
+                } // if
+                if (c.op != Predicate.GT && c.op != Predicate.GE) {        // ==, <, <= bound from above
+                    int cmp = (hi == null) ? -1 : v.compareTo (hi);
+                    if (cmp < 0 || cmp == 0 && c.op == Predicate.LT) { hi = v; hiInc = c.op != Predicate.LT; }
+                } // if
+            } // for
+            if (lo == null && hi == null) continue;
+            if (lo != null && hi != null && lo.compareTo (hi) > 0) return new int [0];
+
+            Collection <List <Integer>> found = indexRange (colIndex.get (col), lo, loInc, hi, hiInc);
+            if (found == null) continue;
+
+            int n = 0;
+            int [] rows = new int [16];
+            for (List <Integer> r : found) {
+                for (int row : r) {
+                    if (n == rows.length) rows = Arrays.copyOf (rows, 2 * n);
+                    rows [n++] = row;
+                } // for
+            } // for
+            rows = Arrays.copyOf (rows, n);
+            Arrays.sort (rows);                                 // keep the table's tuple order
+            return rows;
+        } // for
+        return null;
+    } // rangeRows
+
+    /***************************************************************************
+     * Evaluate the "==" and "!=" terms of a predicate on bitmap-indexed columns as
+     * bitmap operations: "==" is the value's bitmap, "!=" its complement, "&" an
+     * AND of the terms that can be evaluated and "|" an OR (if all of its terms
+     * can).  The result holds every row satisfying the predicate, and the caller
+     * checks the whole predicate on these candidate rows only.
+     * @param pred  the compiled selection predicate
+     * @return  the bitmap of candidate rows, or null if the bitmap indexes do not
+     *          restrict the predicate
+     */
+    private RoaringBitmap bitmapRows (Predicate pred)
+    {
+        if (bitmapIndex.isEmpty ()) return null;
+
+        if (pred instanceof Predicate.Comparison) {
+            Predicate.Comparison c = (Predicate.Comparison) pred;
+            Map <Comparable, RoaringBitmap> bitmaps = bitmapIndex.get (c.col);
+            if (bitmaps == null || c.col2 >= 0 || c.op != Predicate.EQ && c.op != Predicate.NE) return null;
+            RoaringBitmap bm = bitmaps.get (c.value);
+            if (bm == null) bm = new RoaringBitmap ();
+            return (c.op == Predicate.EQ) ? bm : bm.not (tuples.size ());
+
+        } else if (pred instanceof Predicate.And) {
+            RoaringBitmap acc = null;
+            for (Predicate p : ((Predicate.And) pred).terms) {
+                RoaringBitmap bm = bitmapRows (p);
+                if (bm != null) acc = (acc == null) ? bm : acc.and (bm);
+            } // for
+            return acc;
+
+        } else if (pred instanceof Predicate.Or) {
+            RoaringBitmap acc = new RoaringBitmap ();
+            for (Predicate p : ((Predicate.Or) pred).terms) {
+                RoaringBitmap bm = bitmapRows (p);
+                if (bm == null) return null;
+                acc = acc.or (bm);
+            } // for
+            return acc;
+        } // if
+        return null;
+    } // bitmapRows
+
+    /***************************************************************************
+     * Return the row lists of the values of a column index within the bounds.
+     * For tree indexes this is a view over the range, so nothing is copied.
+     * @param idx    the column index
+     * @param lo     the lower bound (null if unbounded)
+     * @param loInc  whether the lower bound is inclusive
+     * @param hi     the upper bound (null if unbounded)
+     * @param hiInc  whether the upper bound is inclusive
+     * @return  the row lists in range, or null if the index cannot answer a
+     *          range (a hash index given anything but a single value)
      */
     @SuppressWarnings("unchecked")
-    
-    public boolean evalTup (String [] postfix, Comparable [] tup)
+    private static Collection <List <Integer>> indexRange (Map <KeyType, List <Integer>> idx,
+                                                           KeyType lo, boolean loInc, KeyType hi, boolean hiInc)
     {
-    	
-    	if (postfix == null) return true;
-        Stack <Comparable <?>> s = new Stack <> ();
-        
-        for (String token : postfix) {
-            //is & or | - evaluate top 2 on the stack 
-        	if(token.equalsIgnoreCase("&") |token.equals("|")){
-                    if(token.equalsIgnoreCase("&")){
-                            
-                    	Comparable clause1 = s.pop();
-                        Comparable clause2 = s.pop();
-
-                        Boolean truthVal = (clause1.compareTo(true) == 0 && clause2.compareTo(true) == 0);
-                        s.push(truthVal);
-           
-                    
-                    }
-                    else{
-                    	Comparable clause1 = s.pop();
-                    	System.out.println("Push 444 -> " + clause1);
-                        Comparable clause2 = s.pop();
-                        System.out.println("Push 444 -> " + clause2);
-                        
-                        Boolean truthVal = (clause1.compareTo(true) == 0 | clause2.compareTo(true) == 0);
-                        s.push(truthVal);
-                    }
-                }
-            //is comparison - evaluate then push boolean
-            else if(isComparison(token)){
-                    Comparable right = s.pop();
-                    Comparable left = s.pop();
-                   
-                    Boolean truthVal = compare(left, token, right);
-                    s.push(truthVal);
-        
-            }
-            //is operand - push if attribute, push val in tuple, else push
-            else{
-                if(Arrays.asList(this.attribute).contains(token)){
-                     s.push(tup[this.columnPos(token)].toString());
-                }
-                else{
-                	 s.push(token);
-                }           
-            }
+        if (idx instanceof BpTree) return ((BpTree <KeyType, List <Integer>>) idx).subMap (lo, loInc, hi, hiInc).values ();
+
+        if (idx instanceof NavigableMap) {
+            NavigableMap <KeyType, List <Integer>> tree = (NavigableMap <KeyType, List <Integer>>) idx;
+            if (lo != null && hi != null) return tree.subMap (lo, loInc, hi, hiInc).values ();
+            if (lo != null) return tree.tailMap (lo, loInc).values ();
+            return (hi != null) ? tree.headMap (hi, hiInc).values () : tree.values ();
+        } // if
+
+        if (lo == null || hi == null || ! loInc || ! hiInc || lo.compareTo (hi) != 0) return null;
+        List <Integer> rows = idx.get (lo);
+        return (rows == null) ? Collections.<List <Integer>> emptyList () : Collections.singletonList (rows);
+    } // indexRange
+
+    /***************************************************************************
+     * Return the compiled predicate for a selection condition, compiling it on
+     * first use.  Each node is given its estimated selectivity (see selectivity)
+     * as its prior pass rate, and the terms of every "&" and "|" are ordered by
+     * rank, so that cheap and decisive terms are evaluated first.  The predicate
+     * is cached and re-ranks its terms as it observes their pass rates.
+     * @param condition  the untokenized infix condition
+     * @return  the compiled, ordered predicate
+     */
+    private Predicate plan (String condition)
+    {
+        Predicate pred = plans.get (condition);
+        if (pred == null) {
+            pred = compile (condition);
+            estimate (pred);
+            if (pred instanceof Predicate.Junction) ((Predicate.Junction) pred).adapt ();
+            if (plans.size () >= PLAN_CACHE) plans.clear ();
+            plans.put (condition, pred);
+        } // if
+        return pred;
+    } // plan
+
+    /***************************************************************************
+     * Set the prior pass rate of every node of a predicate to its estimated
+     * selectivity.
+     * @param pred  the compiled predicate
+     */
+    private void estimate (Predicate pred)
+    {
+        pred.estimate = selectivity (pred);
+        if (pred instanceof Predicate.Junction) {
+            for (Predicate p : ((Predicate.Junction) pred).terms) estimate (p);
+        } // if
+    } // estimate
+
+    /***************************************************************************
+     * Return the evaluation profile of a selection condition used on this table:
+     * the number of evaluations and the pass rate of each term, in the order the
+     * terms are currently evaluated.
+     * #usage out.println (movie.profile ("genre == drama & year > 1990"))
+     * @param condition  the selection condition
+     * @return  the profile, or null if the condition has not been used
+     */
+    public String profile (String condition)
+    {
+        Predicate pred = plans.get (condition);
+        return (pred == null) ? null : pred.profile ();
+    } // profile
+
+    /***************************************************************************
+     * Compile a selection condition into a predicate tree.  Attribute names are
+     * resolved to column positions and constants are converted to the domain of
+     * the column they are compared with (via String2Type), so the resulting
+     * predicate compares typed values.  "&" has higher precedence than "|".
+     * #usage movie.compile ("1979 < year & year < 1990")
+     * @param condition  the untokenized infix condition
+     * @return  the compiled predicate
+     */
+    Predicate compile (String condition)
+    {
+        if (condition == null || condition.trim ().isEmpty ()) return new Predicate.Constant (true);
+
+        String [] token = condition.trim ().split ("\\s+");
+        for (int i = 0; i < token.length; i++) {                 // strip quotes from 'constants'
+            String t = token [i];
+            if (t.length () > 1 && t.charAt (0) == '\'' && t.charAt (t.length () - 1) == '\'') {
+                token [i] = t.substring (1, t.length () - 1);
+            } // if
+        } // for
+
+        List <Predicate> disjuncts = new ArrayList <> ();
+        List <Predicate> conjuncts = new ArrayList <> ();
+        for (int i = 0; i < token.length; i += 4) {
+            String conn = (i + 3 < token.length) ? token [i + 3] : "|";
+            if (i + 2 >= token.length || ! (conn.equals ("&") || conn.equals ("|"))) {
+                out.println ("compile: error - malformed condition " + condition);
+                return new Predicate.Constant (false);
+            } // if
+            conjuncts.add (compileTerm (token [i], token [i + 1], token [i + 2]));
+            if (conn.equals ("|")) {
+                disjuncts.add ((conjuncts.size () == 1) ? conjuncts.get (0)
+                               : new Predicate.And (conjuncts.toArray (new Predicate [0])));
+                conjuncts = new ArrayList <> ();
+            } // if
         } // for
-        System.out.println();
-        return (Boolean) s.pop ();         
-    } // evalTup
+
+        return (disjuncts.size () == 1) ? disjuncts.get (0)
+                                        : new Predicate.Or (disjuncts.toArray (new Predicate [0]));
+    } // compile
+
+    /***************************************************************************
+     * Compile a single comparison "a op b", where each operand is either an
+     * attribute name or a constant.
+     * @param a   the lhs operand
+     * @param op  the comparison operator
+     * @param b   the rhs operand
+     * @return  the compiled comparison
+     */
+    @SuppressWarnings("unchecked")
+    private Predicate compileTerm (String a, String op, String b)
+    {
+        String text = a + " " + op + " " + b;
+        int code = Predicate.opCode (op);
+        int colA = Arrays.asList (attribute).indexOf (a);
+        int colB = Arrays.asList (attribute).indexOf (b);
+        if (code < 0) {
+            out.println ("compile: error - unexpected op " + op);
+            return new Predicate.Constant (false);
+        } // if
+
+        if (colA >= 0 && colB >= 0) return new Predicate.Comparison (colA, code, null, colB, text,
+                                                                              Predicate.cost (domain [colA]));
+        if (colA < 0 && colB < 0) return new Predicate.Constant (compare (a, op, b));
+        if (colA < 0) {                                          // constant op column: swap operands
+            colA = colB;
+            code = Predicate.flip (code);
+            b    = a;
+        } // if
+
+        Comparable value = (domain [colA] == Character.class) ? (Comparable) b.charAt (0)
+                                                              : String2Type.cons (domain [colA], b);
+        if (value == null) {
+            out.println ("compile: error - " + b + " is not a " + domain [colA].getSimpleName ());
+            return new Predicate.Constant (false);
+        } // if
+        return new Predicate.Comparison (colA, code, value, -1, text, Predicate.cost (domain [colA]));
+    } // compileTerm
 
     /***************************************************************************
      * Pack tuple tup into a record/byte-buffer (array of bytes).
@@ -654,33 +2315,18 @@ public class Table
             		b=buffer.array();
             		//System.out.println(b.length);
             		break;
-            	case "java.lang.String":
-            		byte [] tempArray = new byte [64];
-            		b = ((String) tup [j]).getBytes();
-            		ByteBuffer buffer1 = ByteBuffer.allocate(4);
-            		buffer1.putInt(b.length);
-            		//System.out.println("here: "+buffer1.getInt(0));
-            		byte [] t = buffer1.array();
-//            		for(int x=0;x<t.length;++x){
-//            			System.out.println(t[x]);
-//            		}
-            		//System.out.println("String size: " +b.length);
-            		int f=0;
-            		for(int x=4; x>0;--x){
-            			tempArray[64-x] = t[f];
-            			++f;
-            			//System.out.println("in loop: "+t[f]);
-            		}
-            		for(int y=0;y<b.length;++y){
-            			tempArray[y]=b[y];
-            		}
-            		b=tempArray;
-            		//System.out.println("Final length: "+b.length);
+            	case "java.lang.String":       // 4-byte length, then the UTF-8 bytes
+            		byte [] str = ((String) tup [j]).getBytes (StandardCharsets.UTF_8);
+            		if (str.length > stringSize) {
+            		    out.println ("Table.pack: string of " + str.length + " bytes exceeds "
+            		                 + stringSize + " bytes - " + tup [j]);
+            		    return null;
+            		} // if
+            		b = ByteBuffer.allocate (4 + stringSize).putInt (str.length).put (str).array ();
             		break;
             	case "java.lang.Short":
             		ByteBuffer buffer2 = ByteBuffer.allocate(2);
-            		int te = (Integer)tup[j];
-            		Short shortVal = (short)te;
+            		short shortVal = ((Number)tup[j]).shortValue();
             		
             		buffer2.putShort(shortVal);
             		b=buffer2.array();
@@ -691,9 +2337,7 @@ public class Table
 //            		b=buffer3.array();
 //            		break;
             		ByteBuffer buffer3 = ByteBuffer.allocate(4);
-            		Double doub = (Double)tup[j];
-            		float fl = doub.floatValue();
-            		System.out.println("float value: "+fl);
+            		float fl = ((Number)tup[j]).floatValue();
             		buffer3.putFloat(fl);
             		b=buffer3.array();
             		break;
@@ -703,12 +2347,16 @@ public class Table
             		b=buffer4.array();
             		break;
             	case "java.lang.Long":
-            		Integer intVal = (Integer)tup[j];
-            		long tempLong = intVal.longValue();
+            		long tempLong = ((Number)tup[j]).longValue();
             		ByteBuffer buffer5 = ByteBuffer.allocate(8);
             		buffer5.putLong(tempLong);
             		b=buffer5.array();
             		break;
+            	case "java.lang.Character":
+            		ByteBuffer buffer6 = ByteBuffer.allocate(2);
+            		buffer6.putChar((Character)tup[j]);
+            		b=buffer6.array();
+            		break;
             } // switch
             if (b == null) {
                 out.println ("Table.pack: byte array b is null");
@@ -753,18 +2401,9 @@ public class Table
             		break;
             	case "java.lang.String":
             		//System.out.println("String: "+offset);
-            		ByteBuffer temp = ByteBuffer.wrap(record);
-            		int size = temp.getInt(offset+60);
-            		//System.out.println(size);
-            		byte [] string = new byte[size];
-            		for(int x=0;x<size;++x){
-            			//System.out.println(record[offset+x]);
-            			string[x]=record[offset+x];
-            		}
-            		String newString = new String(string);
-            		//System.out.println("new String: "+newString);
-            		tuple[j]=newString;
-            		offset+=64;
+            		int size = buf.getInt (offset);
+            		tuple[j] = new String (record, offset + 4, size, StandardCharsets.UTF_8);
+            		offset += 4 + stringSize;
             		break;
             	case "java.lang.Short":
             		//System.out.println("short: "+offset);
@@ -810,6 +2449,10 @@ public class Table
             		tuple[j]=longBuf.getLong();
             		offset += 8;
             		break;
+            	case "java.lang.Character":
+            		tuple[j]=buf.getChar(offset);
+            		offset += 2;
+            		break;
             } // switch
             
             
@@ -829,23 +2472,157 @@ public class Table
     public int tupleSize ()
     {
         int s = 0;
-        for (int j = 0; j < domain.length; j++) {
-            switch (domain [j].getName ()) {
-            	case "java.lang.Integer": s += 4;  break;
-            	case "java.lang.String":  s += 64; break;
-            	case "java.lang.Long": s+= 8; break;
-            	case "java.lang.Short": s+= 2; break;
-            	case "java.lang.Double": s+= 8; break;
-            	case "java.lang.Float": s+=8;break;
-              //-----------------\\ 
-             // TO BE IMPLEMENTED \\
-            //---------------------\\ 
-            } // if
-        } // for
+        for (int j = 0; j < domain.length; j++) s += fieldSize (domain [j]);
         return s;
     } // tupleSize
+
+    /***************************************************************************
+     * Determine the number of bytes a value of the given domain takes in a record.
+     * @param dom  the domain (attribute type)
+     * @return  the size of a packed value in bytes
+     */
+    private int fieldSize (Class dom)
+    {
+        switch (dom.getName ()) {
+        	case "java.lang.Integer":   return 4;
+        	case "java.lang.String":    return 4 + stringSize;
+        	case "java.lang.Long":      return 8;
+        	case "java.lang.Short":     return 2;
+        	case "java.lang.Double":    return 8;
+        	case "java.lang.Float":     return 4;
+        	case "java.lang.Character": return 2;
+        	default:                    return 0;
+        } // switch
+    } // fieldSize
+
+    /***************************************************************************
+     * Unpack a single column from a record without unpacking the whole tuple.
+     * @param record  the byte-buffer in which the tuple is packed
+     * @param col     the column to unpack
+     * @return  the value of the column
+     */
+    Comparable unpackColumn (byte [] record, int col)
+    {
+        int offset = 0;
+        for (int j = 0; j < col; j++) offset += fieldSize (domain [j]);
+
+        ByteBuffer buf = ByteBuffer.wrap (record);
+        switch (domain [col].getName ()) {
+        	case "java.lang.Integer":   return buf.getInt (offset);
+        	case "java.lang.String":    return new String (record, offset + 4, buf.getInt (offset), StandardCharsets.UTF_8);
+        	case "java.lang.Long":      return buf.getLong (offset);
+        	case "java.lang.Short":     return buf.getShort (offset);
+        	case "java.lang.Double":    return buf.getDouble (offset);
+        	case "java.lang.Float":     return buf.getFloat (offset);
+        	case "java.lang.Character": return buf.getChar (offset);
+        	default:                    return null;
+        } // switch
+    } // unpackColumn
      
 
+    //------------------------ Join Conditions ---------------------------------
+
+    /***************************************************************************
+     * This inner class holds a parsed conjunctive join condition, e.g.,
+     * "movieTitle == title & movieYear == year".  The equality terms form the
+     * (possibly composite) join key, while the remaining theta terms are checked
+     * as a residual filter on each candidate pair of tuples.
+     */
+    static class JoinCondition
+    {
+        final int []    eq1;         // lhs columns of the equality terms
+        final int []    eq2;         // rhs columns of the equality terms
+        final int []    th1;         // lhs columns of the theta terms
+        final String [] thOp;        // comparison operators of the theta terms
+        final int []    th2;         // rhs columns of the theta terms
+
+        JoinCondition (int nEq, int nTheta)
+        {
+            eq1  = new int [nEq];
+            eq2  = new int [nEq];
+            th1  = new int [nTheta];
+            thOp = new String [nTheta];
+            th2  = new int [nTheta];
+        } // constructor
+
+        /** Check the theta terms from position 'from' on for a pair of tuples.
+         */
+        boolean residual (Comparable [] tup1, Comparable [] tup2, int from)
+        {
+            for (int i = from; i < th1.length; i++) {
+                if (! compare (tup1 [th1 [i]], thOp [i], tup2 [th2 [i]])) return false;
+            } // for
+            return true;
+        } // residual
+
+        /** Check all the terms (equality and theta) for a pair of tuples.
+         */
+        boolean matches (Comparable [] tup1, Comparable [] tup2)
+        {
+            for (int i = 0; i < eq1.length; i++) {
+                if (! tup1 [eq1 [i]].equals (tup2 [eq2 [i]])) return false;
+            } // for
+            return residual (tup1, tup2, 0);
+        } // matches
+    } // JoinCondition inner class
+
+    //------------------------ Views -------------------------------------------
+
+    /***************************************************************************
+     * This inner class provides the tuple list of a view (a projection or a
+     * selection) over a base list of tuples: the ith tuple is the base tuple at
+     * row rows [i] (or i, if rows is null), restricted to the columns colPos (or
+     * all of them, if colPos is null).  Projected tuples are built on demand.
+     * The first add copies the tuples into a list of the view's own (copy on
+     * write), after which the list no longer depends on the base.
+     */
+    private static class ViewList
+            extends AbstractList <Comparable []>
+            implements RandomAccess
+    {
+        List <Comparable []> base;         // the base tuples (own tuples, once owned)
+        int []               rows;         // the selection vector (ascending), or null for all rows
+        int []               colPos;       // the base columns to read, or null for all
+        boolean              unique;       // whether the selected rows are distinct by key
+        boolean              owned = false; // whether base is the view's own copy
+
+        ViewList (List <Comparable []> _base, int [] _rows, int [] _colPos, boolean _unique)
+        {
+            base   = _base;
+            rows   = _rows;
+            colPos = _colPos;
+            unique = _unique;
+        } // constructor
+
+        public Comparable [] get (int i)
+        {
+            Comparable [] tup = base.get ((rows == null) ? i : rows [i]);
+            return (colPos == null) ? tup : extractTup (tup, colPos);
+        } // get
+
+        public int size ()
+        {
+            return (rows == null) ? base.size () : rows.length;
+        } // size
+
+        public boolean add (Comparable [] tup)
+        {
+            detach ();
+            return base.add (tup);
+        } // add
+
+        /** Copy the viewed tuples into a list of the view's own.
+         */
+        void detach ()
+        {
+            if (owned) return;
+            base   = new ArrayList <> (this);
+            rows   = null;
+            colPos = null;
+            owned  = true;
+        } // detach
+    } // ViewList inner class
+
     //------------------------ Static Utility Methods --------------------------
 
     /***************************************************************************
@@ -916,95 +2693,6 @@ public class Table
         } // switch
     } // compare
 
-    /***************************************************************************
-     * Convert an untokenized infix expression to a tokenized postfix expression.
-     * This implementation does not handle parentheses ( ).
-     * Ex: "1979 < year & year < 1990" --> { "1979", "year", "<", "year", "1990", "<", "&" } 
-     * @param condition  the untokenized infix condition
-     * @return  resultant tokenized postfix expression
-     * @author Chris Klappich
-     */
-    private static String [] infix2postfix (String condition)
-    {
-    	if (condition == null | condition.trim () == "") return null;
-        
-    	String [] infix   = condition.split (" ");  // tokenize the infix
-        for(int x = 0; x<infix.length;++x){
-        	String temp = infix[x];
-        	if(temp.charAt(0) == '\'' && temp.charAt(temp.length()-1) == '\'' ){
-        		temp = temp.substring(1, temp.length()-1);
-        		out.println(temp);
-        		infix[x]=temp;
-        	}
-        }
-        
-        String [] postfix = new String [infix.length];    // same size, since no ( ) 
-        String [] expWaitList = new String[infix.length];
-        boolean prevExp = false;
-        int insertPoint =0;
-        int wait =0;
-        for(int x=0;x<postfix.length;++x){
-        	//System.out.println("looking at "+infix[x]);
-        	if(!isComparison(infix[x])&&(!infix[x].equals("&")&&!infix[x].equals("|")&&!infix[x].equals("-"))){
-        		postfix[insertPoint]=infix[x];
-        		++insertPoint;
-        		if(prevExp==false){
-        			//System.out.println("switch");
-        			prevExp=true;
-        		}
-        		else if(prevExp==true && wait>0){
-        			//System.out.println("here");
-        			prevExp=false;
-        			//System.out.println(expWaitList[wait-1]);
-        			while(wait>0){
-        				postfix[insertPoint] = expWaitList[wait-1]; 
-        				++insertPoint;
-        				--wait;
-        			}
-        		}
-        			
-        		else if(prevExp==true && wait!=0){
-        			postfix[insertPoint]=infix[x];
-        			++insertPoint;
-        			postfix[insertPoint]=expWaitList[wait];
-        			--wait;
-        			//System.out.println("Wait is: "+wait);
-        		}
-        		else{
-        			//System.out.println("Invalid infix expression");
-        		}
-        	}
-        	else if(isComparison(infix[x])){
-        		System.out.println("is comparison");
-        		if(prevExp == false){
-        			//System.out.println("Invalid infix expression");
-        		}
-        	
-        		else{
-        			expWaitList[wait]=infix[x];
-        			++wait;
-        		}
-        	}
-        	else{
-        		//System.out.println("not string or comparison");
-        		if(prevExp==true){
-        		//	System.out.println("Invalid infix expression");
-        		}
-        		else{
-        			expWaitList[wait]=infix[x];
-        			++wait;
-        		}
-        	}
-        }
-        //quick fix failed
-       // while(insertPoint<postfix.length&wait>0){
-        //	postfix[insertPoint]=expWaitList[wait-1];
-        	//++insertPoint;
-        	//--wait;
-       // }
-        return postfix;
-    } // infix2postfix
-
     /***************************************************************************
      * Find the classes in the "java.lang" package with given names.
      * @param className  the array of class name (e.g., {"Integer", "String"})
@@ -1042,13 +2730,38 @@ public class Table
         return dom;
     } // extractDom
 
+    /***************************************************************************
+     * Return the hash key of a tuple for the given key columns: the value itself
+     * for a single column, otherwise a composite KeyType.
+     * @param tup   the tuple
+     * @param cols  the key columns
+     * @return  the hash key
+     */
+    static Object hashKey (Comparable [] tup, int [] cols)
+    {
+        return (cols.length == 1) ? tup [cols [0]] : new KeyType (extractTup (tup, cols));
+    } // hashKey
+
+    /***************************************************************************
+     * Concatenate two tuples to form a tuple of the joined table.
+     * @param tup1  the tuple from the lhs table
+     * @param tup2  the tuple from the rhs table
+     * @return  the concatenated tuple
+     */
+    static Comparable [] concat (Comparable [] tup1, Comparable [] tup2)
+    {
+        Comparable [] tup = Arrays.copyOf (tup1, tup1.length + tup2.length);
+        System.arraycopy (tup2, 0, tup, tup1.length, tup2.length);
+        return tup;
+    } // concat
+
     /***************************************************************************
      * Extract the corresponding attribute values from the group.
      * @param group   where to extract from
      * @param colPos  the column positions to extract
      * @return  the extracted attribute values
      */
-    private static Comparable [] extractTup (Comparable [] group, int [] colPos)
+    static Comparable [] extractTup (Comparable [] group, int [] colPos)
     {
             
             Comparable [] tup = new Comparable [colPos.length];
@@ -1062,4 +2775,71 @@ public class Table
         return tup;
     } // extractTup
 
-} // Table class
\ No newline at end of file
+    /***************************************************************************
+     * The main method is used for testing purposes only: it checks that large
+     * equi-joins on the rhs table's key or on a secondary index of it use
+     * indexJoin or secondaryIndexJoin, rather than a (parallel) hash join, and
+     * that they produce every matching tuple, and that set operations on tables
+     * with the same key match tuples by value.
+     * @param args  the command-line arguments (optionally the number of movies)
+     */
+    public static void main (String [] args)
+    {
+        int nMovies = (args.length == 1) ? Integer.valueOf (args [0]) : 20000;
+        Table movie  = new Table ("movie", "title year studioName", "String Integer String", "title year");
+        Table studio = new Table ("studio", "name address", "String String", "name");
+        for (int i = 0; i < 100; i++) studio.append (new Comparable [] { "studio" + i, "address" + i }, new int [] { 0 });
+        for (int i = 0; i < nMovies; i++) {
+            movie.append (new Comparable [] { "movie" + i, 1900 + i % 100, "studio" + i % 100 }, new int [] { 0, 1 });
+        } // for
+        setParallelism (Math.max (2, parallelism));
+
+        Table r1 = movie.join ("studioName == name", studio);           // studio's key covers the join column
+        checkJoin ("primary key probe  ", r1.tuples.size (), nMovies, "indexJoin");
+
+        movie.createIndex ("studioName", IndexKind.TREEMAP);
+        Table r2 = studio.join ("name == studioName", movie);           // movie has a secondary index on it
+        checkJoin ("secondary key probe", r2.tuples.size (), nMovies, "secondaryIndexJoin");
+
+        Table r = new Table ("r", "k v", "Integer String", "k");             // same key, different values
+        Table s = new Table ("s", "k v", "Integer String", "k");
+        r.append (new Comparable [] { 1, "a" }, new int [] { 0 });
+        r.append (new Comparable [] { 2, "b" }, new int [] { 0 });
+        s.append (new Comparable [] { 1, "z" }, new int [] { 0 });
+        s.append (new Comparable [] { 3, "c" }, new int [] { 0 });
+        checkRows ("minus on shared key    ", r.minus (s), "[1, a] [2, b]");
+        checkRows ("intersect on shared key", r.intersect (s), "");
+        checkRows ("intersect with itself  ", r.intersect (r), "[1, a] [2, b]");
+        checkRows ("union on shared key    ", r.union (s), "[1, a] [2, b] [1, z] [3, c]");
+    } // main
+
+    /***************************************************************************
+     * Print whether the most recent join used the expected algorithm and
+     * produced the expected number of tuples.
+     * @param what      the description of the join
+     * @param rows      the number of tuples it produced
+     * @param expRows   the expected number of tuples
+     * @param expected  the expected algorithm
+     */
+    private static void checkJoin (String what, int rows, int expRows, String expected)
+    {
+        boolean ok = expected.equals (lastJoin) && rows == expRows;
+        out.println (what + ": " + lastJoin + ", " + rows + " tuples (expected " + expected + ", "
+                     + expRows + " tuples) " + (ok ? "PASS" : "FAIL"));
+    } // checkJoin
+
+    /***************************************************************************
+     * Print whether a table holds exactly the expected tuples, in order.
+     * @param what      the description of the operation
+     * @param table     the table it produced
+     * @param expected  the expected tuples, space separated
+     */
+    private static void checkRows (String what, Table table, String expected)
+    {
+        StringBuilder rows = new StringBuilder ();
+        for (Comparable [] tup : table.tuples) rows.append (rows.length () > 0 ? " " : "").append (Arrays.toString (tup));
+        boolean ok = expected.equals (rows.toString ());
+        out.println (what + ": " + rows + " (expected " + expected + ") " + (ok ? "PASS" : "FAIL"));
+    } // checkRows
+
+} // Table class